@@ -0,0 +1,358 @@
+import java.util.Arrays;
+
+/**
+ * Class for an edge-preserving blur: the bilateral filter.  Each pixel
+ * becomes an average of the pixels near it, but pixels whose brightness
+ * is very different count less, so edges stay sharp while flat areas are
+ * smoothed.
+ *
+ * Working out the filter directly costs a lot per pixel, so this uses a
+ * bilateral grid (Chen, Paris, and Durand): a small 3D grid with one
+ * cell for each spatialSigma by spatialSigma square of the picture and
+ * each rangeSigma of brightness.  Each pixel's color is added into its
+ * cell (splat), the grid is blurred along all three directions, and each
+ * pixel reads its new color back from the grid with trilinear
+ * interpolation (slice).  The time is about linear in the number of
+ * pixels.  The splat and slice are done in parallel bands of rows when
+ * the picture is in parallel mode; splat bands always start on a grid
+ * row so no two bands add into the same cell.
+ *
+ * If cells that size would make the grid bigger than MAX_GRID_SIZE the
+ * cells are made bigger by the same factor in all three directions and
+ * the grid blur is made narrower to match, so the smoothing reaches
+ * about as far as asked for with a somewhat coarser grid.
+ */
+public class BilateralFilter
+{
+
+  /** the most floats the grid may use (bigger grids use bigger cells) */
+  public static final int MAX_GRID_SIZE = 1 << 25;
+
+  /** how much bigger the cells get each time the grid is too big */
+  private static final double GROWTH = 1.05;
+
+  /** the number of empty cells around the grid */
+  private static final int PAD = 1;
+
+  /** the number of floats per cell: red, green, and blue sums, weight */
+  private static final int CELL = 4;
+
+  ///////////////////////// public methods //////////////////////////////
+
+  /**
+   * Method to smooth a picture while keeping its edges
+   * @param picture the picture to change
+   * @param spatialSigma how far (in pixels) the smoothing reaches
+   * @param rangeSigma how different in brightness (0 to 255) pixels can
+   * be and still be averaged together
+   */
+  public static void filter(SimplePicture picture, double spatialSigma,
+                            double rangeSigma)
+  {
+    if (spatialSigma <= 0 || rangeSigma <= 0)
+      throw new IllegalArgumentException("The sigmas must be positive");
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    if (width == 0 || height == 0)
+      return;
+
+    // start from cells a sigma wide and make them bigger until the grid
+    // fits (the first guess is close since the size goes as the cube)
+    double scale = Math.max(1,Math.cbrt((double) gridSize(width,height,
+      spatialSigma,rangeSigma) / MAX_GRID_SIZE));
+    while (gridSize(width,height,spatialSigma * scale,rangeSigma * scale) >
+           MAX_GRID_SIZE)
+      scale *= GROWTH;
+    double spatialStep = spatialSigma * scale;
+    double rangeStep = rangeSigma * scale;
+    Grid sizes = new Grid(gridLength(width - 1,spatialStep),
+                          gridLength(height - 1,spatialStep),
+                          gridLength(255,rangeStep));
+    float[] grid = new float[sizes.width * sizes.height * sizes.depth * CELL];
+
+    byte[] luminance = new byte[width * height];
+    EdgeDetector.luminance(picture,luminance);
+    int[] raster = picture.getRasterData();
+
+    // 1 2 1 weights spread one cell; cells bigger by scale need a blur
+    // narrower by scale, and [w, 1 - 2w, w] spreads by the square root
+    // of 2w
+    splat(picture,raster,luminance,grid,sizes,spatialStep,rangeStep);
+    blur(picture,grid,sizes,(float) (0.25 / (scale * scale)));
+    slice(picture,raster,luminance,grid,sizes,spatialStep,rangeStep);
+  }
+
+  ///////////////////////// helper methods //////////////////////////////
+
+  /**
+   * Method to get the number of cells along one direction of the grid
+   * @param last the last pixel position or brightness
+   * @param step the pixels or brightness per cell
+   * @return the number of cells including the empty ones around them
+   */
+  private static int gridLength(int last, double step)
+  {
+    return (int) Math.round(last / step) + 1 + 2 * PAD;
+  }
+
+  /**
+   * Method to get the number of floats a grid would use
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @param spatialStep the pixels per cell across and down
+   * @param rangeStep the brightness per cell
+   * @return the number of floats
+   */
+  private static long gridSize(int width, int height, double spatialStep,
+                               double rangeStep)
+  {
+    return (long) gridLength(width - 1,spatialStep) *
+      gridLength(height - 1,spatialStep) * gridLength(255,rangeStep) * CELL;
+  }
+
+  /**
+   * Class for the size of a grid
+   */
+  private static class Grid
+  {
+    /** the number of cells across */
+    private final int width;
+
+    /** the number of cells down */
+    private final int height;
+
+    /** the number of cells of brightness */
+    private final int depth;
+
+    /**
+     * Constructor that takes the size
+     * @param width the number of cells across
+     * @param height the number of cells down
+     * @param depth the number of cells of brightness
+     */
+    private Grid(int width, int height, int depth)
+    {
+      this.width = width;
+      this.height = height;
+      this.depth = depth;
+    }
+
+    /**
+     * Method to get the index of the first float of a cell
+     * @param i the cell across
+     * @param j the cell down
+     * @param k the brightness cell
+     * @return the index in the grid array
+     */
+    private int index(int i, int j, int k)
+    {
+      return ((j * width + i) * depth + k) * CELL;
+    }
+  }
+
+  /**
+   * Method to add each pixel's color into the closest cell
+   * @param picture the picture (for its size and row bands)
+   * @param raster the pixels
+   * @param luminance the brightness of each pixel
+   * @param grid the grid to add into
+   * @param sizes the size of the grid
+   * @param spatialStep the pixels per cell across and down
+   * @param rangeStep the brightness per cell
+   */
+  private static void splat(SimplePicture picture, int[] raster,
+                            byte[] luminance, float[] grid, Grid sizes,
+                            double spatialStep, double rangeStep)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    int[] cellColumn = new int[width];
+    for (int x = 0; x < width; x++)
+      cellColumn[x] = (int) Math.round(x / spatialStep) + PAD;
+    int[] cellDepth = new int[256];
+    for (int v = 0; v < 256; v++)
+      cellDepth[v] = (int) Math.round(v / rangeStep) + PAD;
+
+    // the first picture row of each grid row (rows map to grid rows in
+    // order, so a band of grid rows is a band of picture rows)
+    int[] firstRow = new int[sizes.height + 1];
+    Arrays.fill(firstRow,height);
+    for (int y = height - 1; y >= 0; y--)
+      firstRow[(int) Math.round(y / spatialStep) + PAD] = y;
+    for (int j = sizes.height - 1; j >= 0; j--)
+      firstRow[j] = Math.min(firstRow[j],firstRow[j + 1]);
+
+    picture.forEachRowBand(0,sizes.height,(startCell, endCell) ->
+      {
+        for (int y = firstRow[startCell]; y < firstRow[endCell]; y++)
+        {
+          int j = (int) Math.round(y / spatialStep) + PAD;
+          for (int x = 0; x < width; x++)
+          {
+            int i = y * width + x;
+            int rgb = raster[i];
+            int cell = sizes.index(cellColumn[x],j,
+                                   cellDepth[luminance[i] & 0xff]);
+            grid[cell] += (rgb >> 16) & 0xff;
+            grid[cell + 1] += (rgb >> 8) & 0xff;
+            grid[cell + 2] += rgb & 0xff;
+            grid[cell + 3] += 1;
+          }
+        }
+      });
+  }
+
+  /**
+   * Method to blur the grid with side, 1 - 2 * side, side weights along
+   * each direction
+   * @param picture the picture (for its row bands)
+   * @param grid the grid to blur
+   * @param sizes the size of the grid
+   * @param side the weight of each neighbor cell (at most 0.25)
+   */
+  private static void blur(SimplePicture picture, float[] grid, Grid sizes,
+                           float side)
+  {
+    float[] temp = new float[grid.length];
+    int acrossStep = sizes.depth * CELL;
+    int downStep = sizes.width * sizes.depth * CELL;
+
+    // across, then down, then through brightness
+    picture.forEachRowBand(0,sizes.height,(startCell, endCell) ->
+      blurLine(grid,temp,sizes,startCell,endCell,acrossStep,0,side));
+    picture.forEachRowBand(0,sizes.height,(startCell, endCell) ->
+      blurLine(temp,grid,sizes,startCell,endCell,downStep,1,side));
+    picture.forEachRowBand(0,sizes.height,(startCell, endCell) ->
+      blurLine(grid,temp,sizes,startCell,endCell,CELL,2,side));
+    System.arraycopy(temp,0,grid,0,grid.length);
+  }
+
+  /**
+   * Method to blur grid rows along one direction
+   * @param source the grid to read
+   * @param result the grid to write
+   * @param sizes the size of the grid
+   * @param startCell the first grid row to do
+   * @param endCell one past the last grid row to do
+   * @param step the distance in the array between neighbor cells
+   * @param direction 0 for across, 1 for down, 2 for brightness
+   * @param side the weight of each neighbor cell
+   */
+  private static void blurLine(float[] source, float[] result, Grid sizes,
+                               int startCell, int endCell, int step,
+                               int direction, float side)
+  {
+    float center = 1 - 2 * side;
+    for (int j = startCell; j < endCell; j++)
+    {
+      for (int i = 0; i < sizes.width; i++)
+      {
+        for (int k = 0; k < sizes.depth; k++)
+        {
+          int position = direction == 0 ? i : (direction == 1 ? j : k);
+          int limit = direction == 0 ? sizes.width :
+            (direction == 1 ? sizes.height : sizes.depth);
+          boolean hasBefore = position > 0;
+          boolean hasAfter = position < limit - 1;
+          int cell = sizes.index(i,j,k);
+          for (int c = 0; c < CELL; c++)
+          {
+            float sum = 0;
+            if (hasBefore)
+              sum += source[cell + c - step];
+            if (hasAfter)
+              sum += source[cell + c + step];
+            result[cell + c] = center * source[cell + c] + side * sum;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Method to set each pixel to the color read back from the grid with
+   * trilinear interpolation
+   * @param picture the picture (for its size and row bands)
+   * @param raster the pixels to set
+   * @param luminance the brightness of each pixel
+   * @param grid the blurred grid
+   * @param sizes the size of the grid
+   * @param spatialStep the pixels per cell across and down
+   * @param rangeStep the brightness per cell
+   */
+  private static void slice(SimplePicture picture, int[] raster,
+                            byte[] luminance, float[] grid, Grid sizes,
+                            double spatialStep, double rangeStep)
+  {
+    int width = picture.getWidth();
+    int[] column = new int[width];
+    float[] columnFraction = new float[width];
+    for (int x = 0; x < width; x++)
+    {
+      double position = x / spatialStep + PAD;
+      column[x] = (int) position;
+      columnFraction[x] = (float) (position - column[x]);
+    }
+    int[] depth = new int[256];
+    float[] depthFraction = new float[256];
+    for (int v = 0; v < 256; v++)
+    {
+      double position = v / rangeStep + PAD;
+      depth[v] = (int) position;
+      depthFraction[v] = (float) (position - depth[v]);
+    }
+    int acrossStep = sizes.depth * CELL;
+    int downStep = sizes.width * sizes.depth * CELL;
+
+    picture.forEachRowBand((startRow, endRow) ->
+      {
+        float[] color = new float[CELL];
+        for (int y = startRow; y < endRow; y++)
+        {
+          double rowPosition = y / spatialStep + PAD;
+          int j = (int) rowPosition;
+          float fy = (float) (rowPosition - j);
+          for (int x = 0; x < width; x++)
+          {
+            int i = y * width + x;
+            int v = luminance[i] & 0xff;
+            float fx = columnFraction[x];
+            float fz = depthFraction[v];
+            int cell = sizes.index(column[x],j,depth[v]);
+            for (int c = 0; c < CELL; c++)
+            {
+              int at = cell + c;
+              float top = lerp(lerp(grid[at],grid[at + CELL],fz),
+                               lerp(grid[at + acrossStep],
+                                    grid[at + acrossStep + CELL],fz),fx);
+              at += downStep;
+              float bottom = lerp(lerp(grid[at],grid[at + CELL],fz),
+                                  lerp(grid[at + acrossStep],
+                                       grid[at + acrossStep + CELL],fz),fx);
+              color[c] = lerp(top,bottom,fy);
+            }
+            if (color[3] > 0)
+            {
+              int red = Math.min(Math.round(color[0] / color[3]),255);
+              int green = Math.min(Math.round(color[1] / color[3]),255);
+              int blue = Math.min(Math.round(color[2] / color[3]),255);
+              raster[i] = (red << 16) | (green << 8) | blue;
+            }
+          }
+        }
+      });
+  }
+
+  /**
+   * Method to interpolate between two values
+   * @param a the value at 0
+   * @param b the value at 1
+   * @param fraction how far from a to b
+   * @return the interpolated value
+   */
+  private static float lerp(float a, float b, float fraction)
+  {
+    return a + (b - a) * fraction;
+  }
+
+}
@@ -0,0 +1,55 @@
+/**
+ * Enumeration of the ways a filter can get pixels that are past the edge
+ * of a picture (like a blur near the edge that needs pixels outside of
+ * the picture).
+ */
+public enum BorderMode
+{
+  /** use the closest edge pixel (aaa|abcd|ddd) */
+  CLAMP,
+  
+  /** reflect the picture at the edge without repeating it (dcb|abcd|cba) */
+  MIRROR,
+  
+  /** start over from the other side of the picture (bcd|abcd|abc) */
+  WRAP;
+  
+  /**
+   * Method to get the index inside the picture to use for an index that
+   * may be outside of it
+   * @param index the index to look up (may be negative or too big)
+   * @param size the width or height of the picture (at least 1)
+   * @return the index from 0 to size - 1 to use
+   */
+  public int index(int index, int size)
+  {
+    switch (this)
+    {
+      case MIRROR:
+        if (size == 1)
+          return 0;
+        int period = 2 * (size - 1);
+        index = ((index % period) + period) % period;
+        return index < size ? index : period - index;
+      case WRAP:
+        return ((index % size) + size) % size;
+      default:
+        return Math.min(Math.max(index,0),size - 1);
+    }
+  }
+  
+  /**
+   * Method to fill a table with the index to use for every index from 
+   * -radius up to size + radius - 1.  The entry for index i is at 
+   * i + radius in the table.
+   * @param table the table to fill (at least size + 2 * radius long)
+   * @param size the width or height of the picture (at least 1)
+   * @param radius how far past each edge the table goes
+   */
+  public void fillIndexTable(int[] table, int size, int radius)
+  {
+    for (int i = 0; i < size + 2 * radius; i++)
+      table[i] = index(i - radius,size);
+  }
+  
+}
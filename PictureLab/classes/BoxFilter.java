@@ -0,0 +1,224 @@
+/**
+ * Class for blurs made from box filters done with running sums, so each
+ * pixel costs the same no matter how wide the box is.  A Gaussian blur
+ * is approximated by three box blurs in a row, with box sizes picked so
+ * the result has the right standard deviation (sigma).  Each color is
+ * split out into its own array of ints, the boxes are done along the
+ * rows in parallel bands of rows and down the columns in parallel bands
+ * of columns, and the colors are put back together at the end.  Pixels
+ * past the edges repeat the edge pixels.
+ */
+public class BoxFilter
+{
+
+  /** the number of box passes used to approximate a Gaussian */
+  public static final int GAUSSIAN_PASSES = 3;
+
+  ///////////////////////// public methods //////////////////////////////
+
+  /**
+   * Method to work out the sizes of the boxes that together give about
+   * the same blur as a Gaussian.  The sizes are odd and differ by at
+   * most 2 (see "Fast Almost-Gaussian Filtering" by Peter Kovesi).
+   * @param sigma the standard deviation of the Gaussian in pixels
+   * @param passes the number of boxes
+   * @return the width of each box
+   */
+  public static int[] boxesForGauss(double sigma, int passes)
+  {
+    // the ideal width if every box were the same
+    double idealWidth = Math.sqrt(12 * sigma * sigma / passes + 1);
+    int lower = (int) Math.floor(idealWidth);
+    if (lower % 2 == 0)
+      lower--;
+    int upper = lower + 2;
+
+    // how many of the boxes should use the lower width
+    double idealCount = (12 * sigma * sigma - passes * lower * lower -
+                         4 * passes * lower - 3 * passes) / (-4 * lower - 4);
+    long count = Math.round(idealCount);
+
+    int[] sizes = new int[passes];
+    for (int i = 0; i < passes; i++)
+      sizes[i] = i < count ? lower : upper;
+    return sizes;
+  }
+
+  /**
+   * Method to blur a picture with three box blurs that together look
+   * like a Gaussian blur
+   * @param picture the picture to blur
+   * @param sigma the standard deviation of the Gaussian in pixels
+   */
+  public static void gaussianBlur(SimplePicture picture, double sigma)
+  {
+    if (sigma <= 0)
+      return;
+    blur(picture,boxesForGauss(sigma,GAUSSIAN_PASSES));
+  }
+
+  /**
+   * Method to put a blurred copy of a picture into an array, leaving the
+   * picture alone.  The blur is three box blurs that together look like
+   * a Gaussian blur.
+   * @param picture the picture to blur
+   * @param sigma the standard deviation of the Gaussian in pixels
+   * @param result the array to put the blurred pixels in (at least
+   * width * height long)
+   */
+  public static void gaussianBlur(SimplePicture picture, double sigma,
+                                  int[] result)
+  {
+    int[] sizes = sigma <= 0 ? new int[0] :
+      boxesForGauss(sigma,GAUSSIAN_PASSES);
+    blur(picture,sizes,result);
+  }
+
+  /**
+   * Method to blur a picture with box blurs one after another
+   * @param picture the picture to blur
+   * @param sizes the width of each box (odd)
+   */
+  public static void blur(SimplePicture picture, int[] sizes)
+  {
+    blur(picture,sizes,picture.getRasterData());
+  }
+
+  /**
+   * Method to put a copy of a picture blurred with box blurs one after 
+   * another into an array.  The array may be the picture's own raster.
+   * @param picture the picture to blur
+   * @param sizes the width of each box (odd)
+   * @param result the array to put the blurred pixels in (at least
+   * width * height long)
+   */
+  public static void blur(SimplePicture picture, int[] sizes, int[] result)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    int size = width * height;
+    if (size == 0)
+      return;
+    int[] raster = picture.getRasterDataForReading();
+    if (result == raster)
+      picture.markModified();
+    int[] temp = ScratchPool.acquire(size);
+    int[] plane = ScratchPool.acquire(size);
+    try
+    {
+      for (int shift = 16; shift >= 0; shift -= 8)
+      {
+        int colorShift = shift;
+        picture.forEachRowBand((startRow, endRow) ->
+          {
+            for (int i = startRow * width; i < endRow * width; i++)
+              plane[i] = (raster[i] >> colorShift) & 0xff;
+          });
+        for (int boxSize : sizes)
+        {
+          int radius = boxSize / 2;
+          picture.forEachRowBand((startRow, endRow) ->
+            boxRows(plane,temp,width,radius,startRow,endRow));
+          picture.forEachRowBand(0,width,(startCol, endCol) ->
+            boxColumns(temp,plane,width,height,radius,startCol,endCol));
+        }
+        // red is first so it sets the whole value of a separate result
+        int mask = colorShift == 16 && result != raster ? 0 :
+          ~(0xff << colorShift);
+        picture.forEachRowBand((startRow, endRow) ->
+          {
+            for (int i = startRow * width; i < endRow * width; i++)
+              result[i] = (result[i] & mask) | (plane[i] << colorShift);
+          });
+      }
+    }
+    finally
+    {
+      ScratchPool.release(temp);
+      ScratchPool.release(plane);
+    }
+  }
+
+  ///////////////////////// helper methods //////////////////////////////
+
+  /**
+   * Method to average each value with the values up to radius away from
+   * it along its row
+   * @param source the values to read
+   * @param result the array to put the averages in
+   * @param width the width of the rows
+   * @param radius how far the box reaches from its center
+   * @param startRow the first row to do
+   * @param endRow one past the last row to do
+   */
+  private static void boxRows(int[] source, int[] result, int width,
+                              int radius, int startRow, int endRow)
+  {
+    int boxSize = 2 * radius + 1;
+    int half = boxSize / 2;
+    int last = width - 1;
+    for (int y = startRow; y < endRow; y++)
+    {
+      int row = y * width;
+
+      // the box around the first pixel, with the first pixel repeated
+      int sum = (radius + 1) * source[row];
+      for (int i = 1; i <= radius; i++)
+        sum += source[row + Math.min(i,last)];
+
+      for (int x = 0; x < width; x++)
+      {
+        result[row + x] = (sum + half) / boxSize;
+        sum += source[row + Math.min(x + radius + 1,last)] -
+          source[row + Math.max(x - radius,0)];
+      }
+    }
+  }
+
+  /**
+   * Method to average each value with the values up to radius away from
+   * it down its column.  The columns of a band are walked down together
+   * so the array is read a row at a time.
+   * @param source the values to read
+   * @param result the array to put the averages in
+   * @param width the width of the rows
+   * @param height the number of rows
+   * @param radius how far the box reaches from its center
+   * @param startCol the first column to do
+   * @param endCol one past the last column to do
+   */
+  private static void boxColumns(int[] source, int[] result, int width,
+                                 int height, int radius, int startCol,
+                                 int endCol)
+  {
+    int boxSize = 2 * radius + 1;
+    int half = boxSize / 2;
+    int last = height - 1;
+    int[] sums = ScratchPool.acquire(endCol - startCol);
+
+    // the box around the first row, with the first row repeated
+    for (int x = startCol; x < endCol; x++)
+      sums[x - startCol] = (radius + 1) * source[x];
+    for (int i = 1; i <= radius; i++)
+    {
+      int row = Math.min(i,last) * width;
+      for (int x = startCol; x < endCol; x++)
+        sums[x - startCol] += source[row + x];
+    }
+
+    for (int y = 0; y < height; y++)
+    {
+      int row = y * width;
+      int addRow = Math.min(y + radius + 1,last) * width;
+      int removeRow = Math.max(y - radius,0) * width;
+      for (int x = startCol; x < endCol; x++)
+      {
+        int sum = sums[x - startCol];
+        result[row + x] = (sum + half) / boxSize;
+        sums[x - startCol] = sum + source[addRow + x] - source[removeRow + x];
+      }
+    }
+    ScratchPool.release(sums);
+  }
+
+}
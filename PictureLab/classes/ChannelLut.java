@@ -0,0 +1,245 @@
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Class for a lookup table (LUT) filter that changes the red, green, and
+ * blue of each pixel separately.  Any filter where the new red only 
+ * depends on the old red (and the same for green and blue) can be done
+ * by looking the values up in three tables of 256 values, no matter how
+ * complicated the filter is.  Two LUTs can also be combined into one
+ * that does both, so a chain of these filters still only takes one
+ * pass over the picture.
+ */
+public class ChannelLut implements RasterKernels.Filter
+{
+  
+  ////////////////////////// fields ///////////////////////////////////
+  
+  /** the new red for each old red, already shifted into place */
+  private int[] redTable;
+  
+  /** the new green for each old green, already shifted into place */
+  private int[] greenTable;
+  
+  /** the new blue for each old blue */
+  private int[] blueTable;
+  
+  ////////////////////// constructors /////////////////////////////////
+  
+  /**
+   * Constructor that takes the three tables.  Each table must have 256
+   * values and the values are corrected to be within 0 to 255.
+   * @param red the new red value for each red value
+   * @param green the new green value for each green value
+   * @param blue the new blue value for each blue value
+   */
+  public ChannelLut(int[] red, int[] green, int[] blue)
+  {
+    redTable = makeTable(red,16);
+    greenTable = makeTable(green,8);
+    blueTable = makeTable(blue,0);
+  }
+  
+  /**
+   * Constructor that takes a function for each color
+   * @param red the function to get the new red from the old red
+   * @param green the function to get the new green from the old green
+   * @param blue the function to get the new blue from the old blue
+   */
+  public ChannelLut(IntUnaryOperator red, IntUnaryOperator green,
+                    IntUnaryOperator blue)
+  {
+    this(toArray(red),toArray(green),toArray(blue));
+  }
+  
+  ///////////////////////// methods //////////////////////////////
+  
+  /**
+   * Method to fill a table from a function
+   * @param function the function to use
+   * @return the 256 values of the function for 0 to 255
+   */
+  private static int[] toArray(IntUnaryOperator function)
+  {
+    int[] values = new int[256];
+    for (int i = 0; i < 256; i++)
+      values[i] = function.applyAsInt(i);
+    return values;
+  }
+  
+  /**
+   * Method to copy a table, correcting and shifting the values
+   * @param values the 256 values to use
+   * @param shift how far to shift the values left
+   * @return the table to use for lookups
+   */
+  private static int[] makeTable(int[] values, int shift)
+  {
+    if (values.length != 256)
+      throw new IllegalArgumentException("A table must have 256 values");
+    int[] table = new int[256];
+    for (int i = 0; i < 256; i++)
+      table[i] = Math.min(Math.max(values[i],0),255) << shift;
+    return table;
+  }
+  
+  /**
+   * Method to get the new value of a color from one of the tables
+   * @param table the table to use
+   * @param shift how far the values in the table are shifted
+   * @param value the old value from 0 to 255
+   * @return the new value from 0 to 255
+   */
+  private static int lookup(int[] table, int shift, int value)
+  {
+    return table[value] >> shift;
+  }
+  
+  /**
+   * Method to create a LUT that does this LUT and then the passed one.
+   * Applying the result once is the same as applying this LUT and then
+   * the next one.
+   * @param next the LUT to apply after this one
+   * @return the combined LUT
+   */
+  public ChannelLut andThen(ChannelLut next)
+  {
+    int[] red = new int[256];
+    int[] green = new int[256];
+    int[] blue = new int[256];
+    for (int i = 0; i < 256; i++)
+    {
+      red[i] = lookup(next.redTable,16,lookup(redTable,16,i));
+      green[i] = lookup(next.greenTable,8,lookup(greenTable,8,i));
+      blue[i] = lookup(next.blueTable,0,lookup(blueTable,0,i));
+    }
+    return new ChannelLut(red,green,blue);
+  }
+  
+  /**
+   * Method to get the new pixel value for a pixel value
+   * @param rgb the old pixel value
+   * @return the new pixel value (with no alpha)
+   */
+  public int apply(int rgb)
+  {
+    return redTable[(rgb >> 16) & 0xff] | greenTable[(rgb >> 8) & 0xff] |
+      blueTable[rgb & 0xff];
+  }
+  
+  /**
+   * Method to apply this LUT to a range of pixels in a raster
+   * @param raster the pixels
+   * @param start the index of the first pixel to change
+   * @param end one past the index of the last pixel to change
+   */
+  public void apply(int[] raster, int start, int end)
+  {
+    int[] red = redTable;
+    int[] green = greenTable;
+    int[] blue = blueTable;
+    for (int i = start; i < end; i++)
+    {
+      int rgb = raster[i];
+      raster[i] = red[(rgb >> 16) & 0xff] | green[(rgb >> 8) & 0xff] |
+        blue[rgb & 0xff];
+    }
+  }
+  
+  ///////////////////////// common LUTs //////////////////////////////
+  
+  /**
+   * Method to create a LUT that does the same function to all colors
+   * @param function the function to use for red, green, and blue
+   * @return the LUT
+   */
+  public static ChannelLut of(IntUnaryOperator function)
+  {
+    return new ChannelLut(function,function,function);
+  }
+  
+  /**
+   * Method to create a LUT that doesn't change anything
+   * @return the LUT
+   */
+  public static ChannelLut identity()
+  {
+    return of(value -> value);
+  }
+  
+  /**
+   * Method to create a LUT that negates the colors
+   * @return the LUT
+   */
+  public static ChannelLut negate()
+  {
+    return of(value -> 255 - value);
+  }
+  
+  /**
+   * Method to create a LUT that sets the blue to 0
+   * @return the LUT
+   */
+  public static ChannelLut zeroBlue()
+  {
+    return new ChannelLut(value -> value, value -> value, value -> 0);
+  }
+  
+  /**
+   * Method to create a LUT that sets the green to 0
+   * @return the LUT
+   */
+  public static ChannelLut zeroGreen()
+  {
+    return new ChannelLut(value -> value, value -> 0, value -> value);
+  }
+  
+  /**
+   * Method to create a LUT that sets the red and green to 0
+   * @return the LUT
+   */
+  public static ChannelLut keepOnlyBlue()
+  {
+    return new ChannelLut(value -> 0, value -> 0, value -> value);
+  }
+  
+  /**
+   * Method to create a LUT that subtracts an amount from each color
+   * (stopping at 0).  Negative amounts add to the color instead 
+   * (stopping at 255).
+   * @param red the amount to take from the red
+   * @param green the amount to take from the green
+   * @param blue the amount to take from the blue
+   * @return the LUT
+   */
+  public static ChannelLut subtract(int red, int green, int blue)
+  {
+    return new ChannelLut(value -> value - red, value -> value - green,
+                          value -> value - blue);
+  }
+  
+  /**
+   * Method to create a LUT that does what Picture.fixUnderwater does
+   * @return the LUT
+   */
+  public static ChannelLut fixUnderwater()
+  {
+    return subtract(0,100,90);
+  }
+  
+  /**
+   * Method to create a LUT that posterizes the colors.  The values from
+   * 0 to 255 are split into the passed number of equal ranges and each
+   * value becomes the middle of its range, so 4 levels gives 32, 96, 160,
+   * and 224.
+   * @param levels the number of levels for each color (1 to 256)
+   * @return the LUT
+   */
+  public static ChannelLut posterize(int levels)
+  {
+    if (levels < 1 || levels > 256)
+      throw new IllegalArgumentException("levels must be from 1 to 256");
+    int size = 256 / levels;
+    return of(value -> Math.min(value / size, levels - 1) * size + size / 2);
+  }
+  
+}
@@ -0,0 +1,444 @@
+import java.util.Arrays;
+
+/**
+ * Class that convolves pictures with a ConvolutionKernel.  Big kernels
+ * are done with the FFT (see FftConvolution) when that is cheaper, 
+ * other separable kernels are done as a pass along the rows and then a
+ * pass down the columns, and any other kernel is done directly.  All the math is done with
+ * the integer weights of the kernel, and each row is first copied into 
+ * separate red, green, and blue arrays (with the border pixels added on)
+ * so the inner loops are simple loops over arrays.  Rows are done in 
+ * parallel bands when the picture is in parallel mode, and every extra 
+ * array comes from the ScratchPool so doing many convolutions doesn't 
+ * keep creating new arrays.
+ */
+public class Convolution
+{
+  
+  /**
+   * Interface for what to do with each finished row of results
+   */
+  interface RowSink
+  {
+    /**
+     * Method to take the results for one row
+     * @param row the row the results are for
+     * @param red the red results (rounded but not clamped)
+     * @param green the green results (rounded but not clamped)
+     * @param blue the blue results (rounded but not clamped)
+     */
+    public void accept(int row, int[] red, int[] green, int[] blue);
+  }
+  
+  ///////////////////////// public methods //////////////////////////////
+  
+  /**
+   * Method to convolve a picture with a kernel.  Results are clamped to 
+   * be within 0 to 255.
+   * @param picture the picture to change
+   * @param kernel the kernel to use
+   * @param border how to get the pixels past the edges
+   */
+  public static void convolve(SimplePicture picture, ConvolutionKernel kernel,
+                              BorderMode border)
+  {
+    int width = picture.getWidth();
+    int size = width * picture.getHeight();
+    if (size == 0)
+      return;
+    int[] raster = picture.getRasterData();
+    
+    // the direct way reads rows after they have been written so it 
+    // needs to read from a copy
+    int[] source = raster;
+    if (readsWhileWriting(picture,kernel))
+    {
+      source = ScratchPool.acquire(size);
+      System.arraycopy(raster,0,source,0,size);
+    }
+    try
+    {
+      convolveRows(picture,source,kernel,border,(row, red, green, blue) ->
+        {
+          int start = row * width;
+          for (int x = 0; x < width; x++)
+            raster[start + x] = (clamp(red[x]) << 16) | 
+              (clamp(green[x]) << 8) | clamp(blue[x]);
+        });
+    }
+    finally
+    {
+      if (source != raster)
+        ScratchPool.release(source);
+    }
+  }
+  
+  /**
+   * Method to convolve a picture with two kernels and set each color to
+   * the length of the two results (the square root of the sum of their
+   * squares).  With the two Sobel kernels this gives the strength of 
+   * the edges in each color.
+   * @param picture the picture to change
+   * @param kernelX the kernel for the first result
+   * @param kernelY the kernel for the second result
+   * @param border how to get the pixels past the edges
+   */
+  public static void gradientMagnitude(SimplePicture picture, 
+                                       ConvolutionKernel kernelX,
+                                       ConvolutionKernel kernelY,
+                                       BorderMode border)
+  {
+    int width = picture.getWidth();
+    int size = width * picture.getHeight();
+    if (size == 0)
+      return;
+    int[] raster = picture.getRasterData();
+    int[] source = raster;
+    if (readsWhileWriting(picture,kernelY))
+    {
+      source = ScratchPool.acquire(size);
+      System.arraycopy(raster,0,source,0,size);
+    }
+    int[] redX = ScratchPool.acquire(size);
+    int[] greenX = ScratchPool.acquire(size);
+    int[] blueX = ScratchPool.acquire(size);
+    try
+    {
+      // save the first results
+      convolveRows(picture,source,kernelX,border,(row, red, green, blue) ->
+        {
+          System.arraycopy(red,0,redX,row * width,width);
+          System.arraycopy(green,0,greenX,row * width,width);
+          System.arraycopy(blue,0,blueX,row * width,width);
+        });
+      
+      // combine them with the second results
+      convolveRows(picture,source,kernelY,border,(row, red, green, blue) ->
+        {
+          int start = row * width;
+          for (int x = 0; x < width; x++)
+            raster[start + x] = 
+              (magnitude(redX[start + x],red[x]) << 16) | 
+              (magnitude(greenX[start + x],green[x]) << 8) | 
+              magnitude(blueX[start + x],blue[x]);
+        });
+    }
+    finally
+    {
+      ScratchPool.release(redX);
+      ScratchPool.release(greenX);
+      ScratchPool.release(blueX);
+      if (source != raster)
+        ScratchPool.release(source);
+    }
+  }
+  
+  ///////////////////////// helper methods //////////////////////////////
+  
+  /**
+   * Method to correct a value to be within 0 to 255
+   * @param value the value to correct
+   * @return a value within 0 to 255
+   */
+  static int clamp(int value)
+  {
+    return value < 0 ? 0 : (value > 255 ? 255 : value);
+  }
+  
+  /**
+   * Method to get the length of a two part result, clamped to 255
+   * @param x the first part
+   * @param y the second part
+   * @return the length from 0 to 255
+   */
+  private static int magnitude(int x, int y)
+  {
+    return Math.min((int) Math.sqrt((double) x * x + (double) y * y),255);
+  }
+  
+  /**
+   * Method to check if a convolution will still be reading the source 
+   * when the first rows are finished (only the direct way does)
+   * @param picture the picture to convolve
+   * @param kernel the kernel to use
+   * @return true if the source is read while rows are finished
+   */
+  private static boolean readsWhileWriting(SimplePicture picture, 
+                                           ConvolutionKernel kernel)
+  {
+    return !kernel.isSeparable() && 
+      !FftConvolution.isFaster(picture.getWidth(),picture.getHeight(),kernel);
+  }
+  
+  /**
+   * Method to divide a fixed-point value by 2 to the passed power,
+   * rounding to the closest integer
+   * @param value the value to round
+   * @param bits the number of fraction bits to remove
+   * @return the rounded value
+   */
+  private static int round(int value, int bits)
+  {
+    if (bits == 0)
+      return value;
+    return (value + (1 << (bits - 1))) >> bits;
+  }
+  
+  /**
+   * Method to copy a row of pixels into separate red, green, and blue 
+   * arrays, adding the border pixels using an index table
+   * @param source the pixels to copy from
+   * @param rowStart the index of the first pixel in the row
+   * @param xIndex the column to use for each padded position
+   * @param length the number of padded positions to fill
+   * @param red the array to put the red values in
+   * @param green the array to put the green values in
+   * @param blue the array to put the blue values in
+   */
+  private static void splitRow(int[] source, int rowStart, int[] xIndex,
+                               int length, int[] red, int[] green, int[] blue)
+  {
+    for (int k = 0; k < length; k++)
+    {
+      int rgb = source[rowStart + xIndex[k]];
+      red[k] = (rgb >> 16) & 0xff;
+      green[k] = (rgb >> 8) & 0xff;
+      blue[k] = rgb & 0xff;
+    }
+  }
+  
+  /**
+   * Method to do the convolution and hand each finished row to a sink.
+   * For a separable kernel the source is completely read before the 
+   * first row is finished, for other kernels it is read the whole time.
+   * @param picture the picture (for its size and its row bands)
+   * @param source the pixels to read
+   * @param kernel the kernel to use
+   * @param border how to get the pixels past the edges
+   * @param sink what to do with each finished row
+   */
+  private static void convolveRows(SimplePicture picture, int[] source,
+                                   ConvolutionKernel kernel, BorderMode border,
+                                   RowSink sink)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    int radiusX = kernel.getWidth() / 2;
+    int radiusY = kernel.getHeight() / 2;
+    int[] xIndex = ScratchPool.acquire(width + 2 * radiusX);
+    int[] yIndex = ScratchPool.acquire(height + 2 * radiusY);
+    border.fillIndexTable(xIndex,width,radiusX);
+    border.fillIndexTable(yIndex,height,radiusY);
+    try
+    {
+      if (FftConvolution.isFaster(width,height,kernel))
+        FftConvolution.convolve(picture,source,kernel,xIndex,yIndex,sink);
+      else if (kernel.isSeparable())
+        convolveSeparable(picture,source,kernel,xIndex,yIndex,sink);
+      else
+        convolveDirect(picture,source,kernel,xIndex,yIndex,sink);
+    }
+    finally
+    {
+      ScratchPool.release(xIndex);
+      ScratchPool.release(yIndex);
+    }
+  }
+  
+  /**
+   * Method to convolve with every weight of the kernel
+   * @param picture the picture (for its size and its row bands)
+   * @param source the pixels to read
+   * @param kernel the kernel to use
+   * @param xIndex the column to use for each padded column
+   * @param yIndex the row to use for each padded row
+   * @param sink what to do with each finished row
+   */
+  private static void convolveDirect(SimplePicture picture, int[] source,
+                                     ConvolutionKernel kernel, int[] xIndex,
+                                     int[] yIndex, RowSink sink)
+  {
+    int width = picture.getWidth();
+    int kernelWidth = kernel.getWidth();
+    int kernelHeight = kernel.getHeight();
+    int padded = width + kernelWidth - 1;
+    int[] weights = kernel.getFixedWeights();
+    int bits = kernel.getFractionBits();
+    picture.forEachRowBand((startRow, endRow) ->
+      {
+        int[] rowRed = ScratchPool.acquire(padded);
+        int[] rowGreen = ScratchPool.acquire(padded);
+        int[] rowBlue = ScratchPool.acquire(padded);
+        int[] red = ScratchPool.acquire(width);
+        int[] green = ScratchPool.acquire(width);
+        int[] blue = ScratchPool.acquire(width);
+        try
+        {
+          for (int y = startRow; y < endRow; y++)
+          {
+            Arrays.fill(red,0,width,0);
+            Arrays.fill(green,0,width,0);
+            Arrays.fill(blue,0,width,0);
+            for (int j = 0; j < kernelHeight; j++)
+            {
+              splitRow(source,yIndex[y + j] * width,xIndex,padded,
+                       rowRed,rowGreen,rowBlue);
+              for (int i = 0; i < kernelWidth; i++)
+              {
+                int weight = weights[j * kernelWidth + i];
+                if (weight == 0)
+                  continue;
+                for (int x = 0; x < width; x++)
+                {
+                  red[x] += weight * rowRed[x + i];
+                  green[x] += weight * rowGreen[x + i];
+                  blue[x] += weight * rowBlue[x + i];
+                }
+              }
+            }
+            for (int x = 0; x < width; x++)
+            {
+              red[x] = round(red[x],bits);
+              green[x] = round(green[x],bits);
+              blue[x] = round(blue[x],bits);
+            }
+            sink.accept(y,red,green,blue);
+          }
+        }
+        finally
+        {
+          ScratchPool.release(rowRed);
+          ScratchPool.release(rowGreen);
+          ScratchPool.release(rowBlue);
+          ScratchPool.release(red);
+          ScratchPool.release(green);
+          ScratchPool.release(blue);
+        }
+      });
+  }
+  
+  /**
+   * Method to convolve with the row weights and then the column weights
+   * of a separable kernel.  The row pass keeps a few extra fraction bits
+   * in its results so that rounding twice doesn't lose accuracy.
+   * @param picture the picture (for its size and its row bands)
+   * @param source the pixels to read
+   * @param kernel the kernel to use
+   * @param xIndex the column to use for each padded column
+   * @param yIndex the row to use for each padded row
+   * @param sink what to do with each finished row
+   */
+  private static void convolveSeparable(SimplePicture picture, int[] source,
+                                        ConvolutionKernel kernel, int[] xIndex,
+                                        int[] yIndex, RowSink sink)
+  {
+    int width = picture.getWidth();
+    int size = width * picture.getHeight();
+    int kernelWidth = kernel.getWidth();
+    int kernelHeight = kernel.getHeight();
+    int padded = width + kernelWidth - 1;
+    int[] rowWeights = kernel.getFixedRowWeights();
+    int[] columnWeights = kernel.getFixedColumnWeights();
+    int extraBits = kernel.getExtraBits();
+    int rowShift = kernel.getRowFractionBits() - extraBits;
+    int columnShift = kernel.getColumnFractionBits() + extraBits;
+    int[] tempRed = ScratchPool.acquire(size);
+    int[] tempGreen = ScratchPool.acquire(size);
+    int[] tempBlue = ScratchPool.acquire(size);
+    try
+    {
+      // pass along the rows
+      picture.forEachRowBand((startRow, endRow) ->
+        {
+          int[] rowRed = ScratchPool.acquire(padded);
+          int[] rowGreen = ScratchPool.acquire(padded);
+          int[] rowBlue = ScratchPool.acquire(padded);
+          try
+          {
+            for (int y = startRow; y < endRow; y++)
+            {
+              int start = y * width;
+              splitRow(source,start,xIndex,padded,rowRed,rowGreen,rowBlue);
+              Arrays.fill(tempRed,start,start + width,0);
+              Arrays.fill(tempGreen,start,start + width,0);
+              Arrays.fill(tempBlue,start,start + width,0);
+              for (int i = 0; i < kernelWidth; i++)
+              {
+                int weight = rowWeights[i];
+                if (weight == 0)
+                  continue;
+                for (int x = 0; x < width; x++)
+                {
+                  tempRed[start + x] += weight * rowRed[x + i];
+                  tempGreen[start + x] += weight * rowGreen[x + i];
+                  tempBlue[start + x] += weight * rowBlue[x + i];
+                }
+              }
+              for (int x = start; x < start + width; x++)
+              {
+                tempRed[x] = round(tempRed[x],rowShift);
+                tempGreen[x] = round(tempGreen[x],rowShift);
+                tempBlue[x] = round(tempBlue[x],rowShift);
+              }
+            }
+          }
+          finally
+          {
+            ScratchPool.release(rowRed);
+            ScratchPool.release(rowGreen);
+            ScratchPool.release(rowBlue);
+          }
+        });
+      
+      // pass down the columns
+      picture.forEachRowBand((startRow, endRow) ->
+        {
+          int[] red = ScratchPool.acquire(width);
+          int[] green = ScratchPool.acquire(width);
+          int[] blue = ScratchPool.acquire(width);
+          try
+          {
+            for (int y = startRow; y < endRow; y++)
+            {
+              Arrays.fill(red,0,width,0);
+              Arrays.fill(green,0,width,0);
+              Arrays.fill(blue,0,width,0);
+              for (int j = 0; j < kernelHeight; j++)
+              {
+                int weight = columnWeights[j];
+                if (weight == 0)
+                  continue;
+                int start = yIndex[y + j] * width;
+                for (int x = 0; x < width; x++)
+                {
+                  red[x] += weight * tempRed[start + x];
+                  green[x] += weight * tempGreen[start + x];
+                  blue[x] += weight * tempBlue[start + x];
+                }
+              }
+              for (int x = 0; x < width; x++)
+              {
+                red[x] = round(red[x],columnShift);
+                green[x] = round(green[x],columnShift);
+                blue[x] = round(blue[x],columnShift);
+              }
+              sink.accept(y,red,green,blue);
+            }
+          }
+          finally
+          {
+            ScratchPool.release(red);
+            ScratchPool.release(green);
+            ScratchPool.release(blue);
+          }
+        });
+    }
+    finally
+    {
+      ScratchPool.release(tempRed);
+      ScratchPool.release(tempGreen);
+      ScratchPool.release(tempBlue);
+    }
+  }
+  
+}
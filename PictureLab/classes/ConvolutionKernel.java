@@ -0,0 +1,404 @@
+/**
+ * Class for a convolution kernel: a small grid of weights that is laid
+ * over each pixel of a picture.  The new value of the pixel is the sum of
+ * each weight times the pixel under it.  The width and height of the grid
+ * must be odd so that there is a center.  The kernel is used as is 
+ * without flipping it, so the weight at column i and row j is multiplied
+ * by the pixel i - width / 2 columns and j - height / 2 rows away.
+ * 
+ * When creating a kernel it checks if it is separable (if every row is 
+ * a multiple of one row of weights).  A separable kernel can be done as 
+ * a pass along the rows and then a pass down the columns, which takes 
+ * width + height multiplies per pixel instead of width * height.  The
+ * kernel also works out integer (fixed-point) versions of its weights 
+ * once, so the convolution only has to do integer math.
+ */
+public class ConvolutionKernel
+{
+  
+  /** the most fraction bits to use for the integer weights */
+  public static final int MAX_FRACTION_BITS = 16;
+  
+  /** the extra fraction bits kept between the two separable passes */
+  private static final int EXTRA_BITS = 6;
+  
+  /**
+   * the biggest sum allowed in an int (half of the real limit to leave
+   * room for rounding)
+   */
+  private static final double INT_LIMIT = Integer.MAX_VALUE / 2;
+  
+  ////////////////////////// fields ///////////////////////////////////
+  
+  /** the number of columns of weights */
+  private int width;
+  
+  /** the number of rows of weights */
+  private int height;
+  
+  /** the weights in row-major order */
+  private double[] weights;
+  
+  /** the weights along a row if the kernel is separable, else null */
+  private double[] rowWeights;
+  
+  /** the weights down a column if the kernel is separable, else null */
+  private double[] columnWeights;
+  
+  /** the integer weights in row-major order */
+  private int[] fixedWeights;
+  
+  /** the number of fraction bits in fixedWeights */
+  private int fractionBits;
+  
+  /** the integer row weights if separable */
+  private int[] fixedRowWeights;
+  
+  /** the number of fraction bits in fixedRowWeights */
+  private int rowFractionBits;
+  
+  /** the integer column weights if separable */
+  private int[] fixedColumnWeights;
+  
+  /** the number of fraction bits in fixedColumnWeights */
+  private int columnFractionBits;
+  
+  ////////////////////// constructors /////////////////////////////////
+  
+  /**
+   * Constructor that takes the size and the weights of the kernel
+   * @param width the number of columns (must be odd)
+   * @param height the number of rows (must be odd)
+   * @param weights the weights in row-major order (width * height)
+   */
+  public ConvolutionKernel(int width, int height, double[] weights)
+  {
+    checkSize(width,height);
+    if (weights.length != width * height)
+      throw new IllegalArgumentException("A " + width + " by " + height +
+                                         " kernel needs " + width * height +
+                                         " weights");
+    this.width = width;
+    this.height = height;
+    this.weights = weights.clone();
+    findSeparation();
+    makeFixedWeights();
+  }
+  
+  /**
+   * Constructor for a separable kernel that takes the weights along a row
+   * and down a column.  The weight at column i and row j is 
+   * rowWeights[i] * columnWeights[j].
+   * @param rowWeights the weights along a row (odd length)
+   * @param columnWeights the weights down a column (odd length)
+   */
+  public ConvolutionKernel(double[] rowWeights, double[] columnWeights)
+  {
+    checkSize(rowWeights.length,columnWeights.length);
+    width = rowWeights.length;
+    height = columnWeights.length;
+    weights = new double[width * height];
+    for (int j = 0; j < height; j++)
+      for (int i = 0; i < width; i++)
+        weights[j * width + i] = rowWeights[i] * columnWeights[j];
+    this.rowWeights = rowWeights.clone();
+    this.columnWeights = columnWeights.clone();
+    makeFixedWeights();
+  }
+  
+  ///////////////////////// methods //////////////////////////////
+  
+  /**
+   * Method to check that a kernel size is odd in both directions
+   * @param width the number of columns
+   * @param height the number of rows
+   */
+  private static void checkSize(int width, int height)
+  {
+    if (width < 1 || height < 1 || width % 2 == 0 || height % 2 == 0)
+      throw new IllegalArgumentException(
+        "The width and height of a kernel must be odd");
+  }
+  
+  /**
+   * Method to check if the weights are one row of weights times one 
+   * column of weights and save the row and column if they are.  The 
+   * largest weight is used to pick the row and column to try.
+   */
+  private void findSeparation()
+  {
+    int pivot = 0;
+    for (int k = 1; k < weights.length; k++)
+      if (Math.abs(weights[k]) > Math.abs(weights[pivot]))
+        pivot = k;
+    double largest = Math.abs(weights[pivot]);
+    int pivotRow = pivot / width;
+    int pivotCol = pivot % width;
+    
+    double[] row = new double[width];
+    double[] column = new double[height];
+    for (int j = 0; j < height; j++)
+      column[j] = weights[j * width + pivotCol];
+    for (int i = 0; i < width; i++)
+      row[i] = largest == 0 ? 0 : weights[pivotRow * width + i] / weights[pivot];
+    
+    // every weight has to match the row times the column
+    double tolerance = 1e-9 * Math.max(largest,1e-300);
+    for (int j = 0; j < height; j++)
+      for (int i = 0; i < width; i++)
+        if (Math.abs(weights[j * width + i] - column[j] * row[i]) > tolerance)
+          return;
+    rowWeights = row;
+    columnWeights = column;
+  }
+  
+  /**
+   * Method to work out the integer weights and how many fraction bits 
+   * they can use without a sum of 255 times every weight overflowing
+   */
+  private void makeFixedWeights()
+  {
+    fractionBits = pickFractionBits(255 * sumOfMagnitudes(weights));
+    fixedWeights = toFixed(weights,fractionBits);
+    if (isSeparable())
+    {
+      double rowLimit = 255 * sumOfMagnitudes(rowWeights);
+      rowFractionBits = pickFractionBits(rowLimit);
+      int extra = Math.min(EXTRA_BITS,rowFractionBits);
+      columnFractionBits = pickFractionBits(rowLimit * (1 << extra) * 
+                                            sumOfMagnitudes(columnWeights));
+      fixedRowWeights = toFixed(rowWeights,rowFractionBits);
+      fixedColumnWeights = toFixed(columnWeights,columnFractionBits);
+    }
+  }
+  
+  /**
+   * Method to add up the sizes of the weights
+   * @param values the weights
+   * @return the sum of the absolute values
+   */
+  private static double sumOfMagnitudes(double[] values)
+  {
+    double sum = 0;
+    for (double value : values)
+      sum += Math.abs(value);
+    return sum;
+  }
+  
+  /**
+   * Method to pick the number of fraction bits so that the largest 
+   * possible sum still fits in an int
+   * @param largestSum the largest possible sum with a weight of 1
+   * @return the number of fraction bits to use
+   */
+  private static int pickFractionBits(double largestSum)
+  {
+    int bits = MAX_FRACTION_BITS;
+    while (bits > 0 && largestSum * (1L << bits) > INT_LIMIT)
+      bits--;
+    if (largestSum > INT_LIMIT)
+      throw new IllegalArgumentException("The kernel weights are too big");
+    return bits;
+  }
+  
+  /**
+   * Method to turn weights into integers with the passed number of 
+   * fraction bits.  The rounding is corrected on the largest weight so 
+   * the integer weights add up to the same total as the real ones (so a
+   * blur doesn't make the picture a little lighter or darker).
+   * @param values the weights
+   * @param bits the number of fraction bits
+   * @return the integer weights
+   */
+  private static int[] toFixed(double[] values, int bits)
+  {
+    int[] fixed = new int[values.length];
+    double scale = 1L << bits;
+    double total = 0;
+    long fixedTotal = 0;
+    int largest = 0;
+    for (int k = 0; k < values.length; k++)
+    {
+      fixed[k] = (int) Math.round(values[k] * scale);
+      total += values[k];
+      fixedTotal += fixed[k];
+      if (Math.abs(values[k]) > Math.abs(values[largest]))
+        largest = k;
+    }
+    fixed[largest] += (int) (Math.round(total * scale) - fixedTotal);
+    return fixed;
+  }
+  
+  /**
+   * Method to get the number of columns of weights
+   * @return the width of the kernel
+   */
+  public int getWidth() { return width; }
+  
+  /**
+   * Method to get the number of rows of weights
+   * @return the height of the kernel
+   */
+  public int getHeight() { return height; }
+  
+  /**
+   * Method to get the weight at a column and row of the kernel
+   * @param col the column of the weight
+   * @param row the row of the weight
+   * @return the weight
+   */
+  public double getWeight(int col, int row)
+  {
+    return weights[row * width + col];
+  }
+  
+  /**
+   * Method to check if this kernel can be done as a row pass and a 
+   * column pass
+   * @return true if the kernel is separable else false
+   */
+  public boolean isSeparable()
+  {
+    return rowWeights != null;
+  }
+  
+  /**
+   * Method to get the integer weights in row-major order
+   * @return the integer weights (don't change them)
+   */
+  int[] getFixedWeights() { return fixedWeights; }
+  
+  /**
+   * Method to get the number of fraction bits of the integer weights
+   * @return the number of fraction bits
+   */
+  int getFractionBits() { return fractionBits; }
+  
+  /**
+   * Method to get the integer row weights of a separable kernel
+   * @return the integer row weights (don't change them)
+   */
+  int[] getFixedRowWeights() { return fixedRowWeights; }
+  
+  /**
+   * Method to get the number of fraction bits of the integer row weights
+   * @return the number of fraction bits
+   */
+  int getRowFractionBits() { return rowFractionBits; }
+  
+  /**
+   * Method to get the integer column weights of a separable kernel
+   * @return the integer column weights (don't change them)
+   */
+  int[] getFixedColumnWeights() { return fixedColumnWeights; }
+  
+  /**
+   * Method to get the number of fraction bits of the integer column 
+   * weights
+   * @return the number of fraction bits
+   */
+  int getColumnFractionBits() { return columnFractionBits; }
+  
+  /**
+   * Method to get the number of extra fraction bits kept between the 
+   * row pass and the column pass of a separable kernel
+   * @return the number of extra bits
+   */
+  int getExtraBits() { return Math.min(EXTRA_BITS,rowFractionBits); }
+  
+  /**
+   * Method to check if another object is a kernel with the same size
+   * and weights
+   * @param other the object to compare to
+   * @return true if it is the same kernel else false
+   */
+  public boolean equals(Object other)
+  {
+    if (this == other)
+      return true;
+    if (!(other instanceof ConvolutionKernel))
+      return false;
+    ConvolutionKernel kernel = (ConvolutionKernel) other;
+    return width == kernel.width && height == kernel.height &&
+      java.util.Arrays.equals(weights,kernel.weights);
+  }
+  
+  /**
+   * Method to get a hash code made from the size and weights
+   * @return the hash code
+   */
+  public int hashCode()
+  {
+    return (width * 31 + height) * 31 + java.util.Arrays.hashCode(weights);
+  }
+  
+  ///////////////////////// common kernels //////////////////////////////
+  
+  /**
+   * Method to create a box blur kernel that averages a square of pixels
+   * @param radius how far the square goes from the center pixel
+   * @return the kernel
+   */
+  public static ConvolutionKernel box(int radius)
+  {
+    int size = 2 * radius + 1;
+    double[] weights = new double[size];
+    java.util.Arrays.fill(weights,1.0 / size);
+    return new ConvolutionKernel(weights,weights);
+  }
+  
+  /**
+   * Method to create a Gaussian blur kernel.  It reaches 3 sigma from 
+   * the center and the weights add up to 1.
+   * @param sigma the standard deviation of the blur in pixels
+   * @return the kernel
+   */
+  public static ConvolutionKernel gaussian(double sigma)
+  {
+    int radius = (int) Math.ceil(3 * sigma);
+    double[] weights = new double[2 * radius + 1];
+    double sum = 0;
+    for (int i = -radius; i <= radius; i++)
+    {
+      weights[i + radius] = sigma > 0 ? Math.exp(-(i * i) / (2 * sigma * sigma)) : 1;
+      sum += weights[i + radius];
+    }
+    for (int i = 0; i < weights.length; i++)
+      weights[i] /= sum;
+    return new ConvolutionKernel(weights,weights);
+  }
+  
+  /**
+   * Method to create a 3 by 3 sharpen kernel
+   * @return the kernel
+   */
+  public static ConvolutionKernel sharpen()
+  {
+    return new ConvolutionKernel(3,3,new double[] { 0, -1,  0,
+                                                   -1,  5, -1,
+                                                    0, -1,  0});
+  }
+  
+  /**
+   * Method to create the Sobel kernel that finds changes from left to 
+   * right
+   * @return the kernel
+   */
+  public static ConvolutionKernel sobelX()
+  {
+    return new ConvolutionKernel(new double[] {-1, 0, 1},
+                                 new double[] {1, 2, 1});
+  }
+  
+  /**
+   * Method to create the Sobel kernel that finds changes from top to
+   * bottom
+   * @return the kernel
+   */
+  public static ConvolutionKernel sobelY()
+  {
+    return new ConvolutionKernel(new double[] {1, 2, 1},
+                                 new double[] {-1, 0, 1});
+  }
+  
+}
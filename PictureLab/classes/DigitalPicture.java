@@ -1,5 +1,6 @@
 import java.awt.Image;
 import java.awt.image.BufferedImage;
+import java.util.function.Consumer;
 
 /**
  * Interface to describe a digital picture.  A digital picture can have an 
@@ -30,4 +31,43 @@ public interface DigitalPicture
   public void show(); // show the picture 
   public void explore(); // explore the picture
   public boolean write(String fileName); // write out a file
+  
+  /**
+   * Method to do an action on every pixel in row-major order.  The same
+   * PixelCursor is moved to each location and passed to the action, so
+   * no Pixel objects are created while looping.  The action should not 
+   * keep the pixel after it returns.
+   * @param action the action to do on each pixel
+   */
+  default void forEachPixel(Consumer<Pixel> action)
+  {
+    forEachPixel(0,getHeight(),action);
+  }
+  
+  /**
+   * Method to do an action on every pixel in a band of rows in 
+   * row-major order, reusing one PixelCursor for all of them
+   * @param startRow the first row to visit
+   * @param endRow one past the last row to visit
+   * @param action the action to do on each pixel
+   */
+  default void forEachPixel(int startRow, int endRow, Consumer<Pixel> action)
+  {
+    PixelCursor cursor = new PixelCursor(this);
+    int width = getWidth();
+    for (int row = startRow; row < endRow; row++)
+      for (int col = 0; col < width; col++)
+        action.accept(cursor.moveTo(col,row));
+  }
+  
+  /**
+   * Method to do an action on every pixel in one row from left to
+   * right, reusing one PixelCursor for all of them
+   * @param row the row to visit
+   * @param action the action to do on each pixel
+   */
+  default void forEachPixelInRow(int row, Consumer<Pixel> action)
+  {
+    forEachPixel(row,row + 1,action);
+  }
 }
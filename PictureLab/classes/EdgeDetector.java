@@ -0,0 +1,377 @@
+/**
+ * Class that finds edges in pictures.  It has the simple edge detection
+ * used by Picture.edgeDetection (compare each pixel to the pixel on its
+ * right) and the Canny edge detector: the picture is turned into a plane
+ * of luminance bytes, smoothed, run through the Sobel kernels to get how
+ * strong the change is and which way it goes, thinned to the strongest
+ * pixel across each edge (non-maximum suppression), and then traced so
+ * that weak edge pixels only count if they touch strong ones (hysteresis).
+ * Everything works on primitive arrays and all but the tracing is done
+ * in row bands so it runs in parallel when the picture is in parallel
+ * mode.  Edges are set to black and everything else to white.
+ */
+public class EdgeDetector
+{
+
+  /** pixel state for hysteresis: not an edge */
+  private static final byte NONE = 0;
+
+  /** pixel state for hysteresis: a weak edge pixel */
+  private static final byte WEAK = 1;
+
+  /** pixel state for hysteresis: a strong (or traced) edge pixel */
+  private static final byte STRONG = 2;
+
+  /**
+   * 1000 times the tangent of 22.5 degrees, used to sort gradient
+   * directions into horizontal, vertical, and the two diagonals
+   */
+  private static final int TAN_22_5 = 414;
+
+  /** the black used for edges */
+  private static final int EDGE = 0x000000;
+
+  /** the white used for everything else */
+  private static final int BACKGROUND = 0xffffff;
+
+  ///////////////////////// simple edges //////////////////////////////
+
+  /**
+   * Method to set each pixel to black if its color is more than a
+   * distance away from the pixel on its right and to white if not.  The
+   * last column is left alone.  The squared distance is compared to the
+   * squared limit so no square roots are needed.
+   * @param picture the picture to change
+   * @param edgeDist the distance for finding edges (negative means
+   * every pixel is an edge)
+   */
+  public static void compareRight(SimplePicture picture, int edgeDist)
+  {
+    int width = picture.getWidth();
+    int[] raster = picture.getRasterData();
+    long limit = edgeDist < 0 ? -1 : (long) edgeDist * edgeDist;
+
+    // each pixel only looks at the pixel to its right, which is not
+    // changed until after, so rows can be done in place in any order
+    picture.forEachRowBand((startRow, endRow) ->
+      {
+        for (int row = startRow; row < endRow; row++)
+        {
+          int end = row * width + width - 1;
+          for (int i = row * width; i < end; i++)
+          {
+            int left = raster[i];
+            int right = raster[i + 1];
+            int red = ((left >> 16) & 0xff) - ((right >> 16) & 0xff);
+            int green = ((left >> 8) & 0xff) - ((right >> 8) & 0xff);
+            int blue = (left & 0xff) - (right & 0xff);
+            int distance = red * red + green * green + blue * blue;
+            raster[i] = distance > limit ? EDGE : BACKGROUND;
+          }
+        }
+      });
+  }
+
+  ///////////////////////// Canny edges //////////////////////////////
+
+  /**
+   * Method to find the edges in a picture with the Canny edge detector.
+   * Thresholds are for the gradient of the luminance (the Sobel kernels
+   * give about 1000 for a sharp black to white step).
+   * @param picture the picture to change
+   * @param lowThreshold the weakest gradient that can be part of an edge
+   * @param highThreshold the weakest gradient that starts an edge
+   */
+  public static void canny(SimplePicture picture, int lowThreshold,
+                           int highThreshold)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    int size = width * height;
+    if (size == 0)
+      return;
+    if (lowThreshold > highThreshold)
+      throw new IllegalArgumentException(
+        "The low threshold can't be more than the high threshold");
+
+    byte[] luminance = new byte[size];
+    byte[] smoothed = new byte[size];
+    byte[] direction = new byte[size];
+    byte[] state = new byte[size];
+    int[] magnitude = ScratchPool.acquire(size);
+    try
+    {
+      luminance(picture,luminance);
+      smooth(picture,luminance,smoothed);
+      gradient(picture,smoothed,magnitude,direction);
+      suppress(picture,magnitude,direction,state,
+               squared(lowThreshold),squared(highThreshold));
+      trace(picture,state,magnitude);
+
+      int[] raster = picture.getRasterData();
+      picture.forEachRowBand((startRow, endRow) ->
+        {
+          for (int i = startRow * width; i < endRow * width; i++)
+            raster[i] = state[i] == STRONG ? EDGE : BACKGROUND;
+        });
+    }
+    finally
+    {
+      ScratchPool.release(magnitude);
+    }
+  }
+
+  /**
+   * Method to square a threshold (negative thresholds count as 0)
+   * @param threshold the threshold
+   * @return the threshold squared
+   */
+  private static int squared(int threshold)
+  {
+    int value = Math.max(0,Math.min(threshold,1 << 15));
+    return value * value;
+  }
+
+  /**
+   * Method to fill a plane with the luminance of each pixel
+   * (0.299 red + 0.587 green + 0.114 blue)
+   * @param picture the picture to read
+   * @param luminance the plane to fill (unsigned bytes)
+   */
+  static void luminance(SimplePicture picture, byte[] luminance)
+  {
+    int width = picture.getWidth();
+    int[] raster = picture.getRasterDataForReading();
+    picture.forEachRowBand((startRow, endRow) ->
+      {
+        for (int i = startRow * width; i < endRow * width; i++)
+        {
+          int rgb = raster[i];
+          int value = ((rgb >> 16) & 0xff) * 299 + ((rgb >> 8) & 0xff) * 587 +
+            (rgb & 0xff) * 114;
+          luminance[i] = (byte) ((value + 500) / 1000);
+        }
+      });
+  }
+
+  /**
+   * Method to smooth a plane with a 5 by 5 Gaussian (1 4 6 4 1 along
+   * each direction) so noise doesn't show up as edges.  Edge pixels are
+   * repeated past the edges.
+   * @param picture the picture (for its size and its row bands)
+   * @param source the plane to smooth
+   * @param result the plane to put the smoothed values in
+   */
+  private static void smooth(SimplePicture picture, byte[] source,
+                             byte[] result)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    int[] columns = ScratchPool.acquire(width * height);
+    try
+    {
+      // down the columns first (sums up to 16 * 255)
+      picture.forEachRowBand((startRow, endRow) ->
+        {
+          for (int y = startRow; y < endRow; y++)
+          {
+            int up2 = Math.max(y - 2,0) * width;
+            int up1 = Math.max(y - 1,0) * width;
+            int here = y * width;
+            int down1 = Math.min(y + 1,height - 1) * width;
+            int down2 = Math.min(y + 2,height - 1) * width;
+            for (int x = 0; x < width; x++)
+              columns[here + x] = (source[up2 + x] & 0xff) +
+                4 * (source[up1 + x] & 0xff) + 6 * (source[here + x] & 0xff) +
+                4 * (source[down1 + x] & 0xff) + (source[down2 + x] & 0xff);
+          }
+        });
+
+      // then along the rows
+      picture.forEachRowBand((startRow, endRow) ->
+        {
+          for (int y = startRow; y < endRow; y++)
+          {
+            int row = y * width;
+            for (int x = 0; x < width; x++)
+            {
+              int sum = columns[row + Math.max(x - 2,0)] +
+                4 * columns[row + Math.max(x - 1,0)] +
+                6 * columns[row + x] +
+                4 * columns[row + Math.min(x + 1,width - 1)] +
+                columns[row + Math.min(x + 2,width - 1)];
+              result[row + x] = (byte) ((sum + 128) >> 8);
+            }
+          }
+        });
+    }
+    finally
+    {
+      ScratchPool.release(columns);
+    }
+  }
+
+  /**
+   * Method to find the squared gradient magnitude with the Sobel kernels
+   * and sort the gradient direction into one of four directions: 0 for
+   * horizontal, 1 for the diagonal going down to the right, 2 for
+   * vertical, and 3 for the diagonal going down to the left
+   * @param picture the picture (for its size and its row bands)
+   * @param plane the luminance plane
+   * @param magnitude the squared magnitudes to fill
+   * @param direction the directions to fill
+   */
+  private static void gradient(SimplePicture picture, byte[] plane,
+                               int[] magnitude, byte[] direction)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    picture.forEachRowBand((startRow, endRow) ->
+      {
+        for (int y = startRow; y < endRow; y++)
+        {
+          int up = Math.max(y - 1,0) * width;
+          int here = y * width;
+          int down = Math.min(y + 1,height - 1) * width;
+          for (int x = 0; x < width; x++)
+          {
+            int left = Math.max(x - 1,0);
+            int right = Math.min(x + 1,width - 1);
+            int upLeft = plane[up + left] & 0xff;
+            int upMiddle = plane[up + x] & 0xff;
+            int upRight = plane[up + right] & 0xff;
+            int middleLeft = plane[here + left] & 0xff;
+            int middleRight = plane[here + right] & 0xff;
+            int downLeft = plane[down + left] & 0xff;
+            int downMiddle = plane[down + x] & 0xff;
+            int downRight = plane[down + right] & 0xff;
+            int gx = (upRight + 2 * middleRight + downRight) -
+              (upLeft + 2 * middleLeft + downLeft);
+            int gy = (downLeft + 2 * downMiddle + downRight) -
+              (upLeft + 2 * upMiddle + upRight);
+            magnitude[here + x] = gx * gx + gy * gy;
+
+            int ax = Math.abs(gx);
+            int ay = Math.abs(gy);
+            byte way;
+            if (ay * 1000 <= ax * TAN_22_5)
+              way = 0;
+            else if (ax * 1000 <= ay * TAN_22_5)
+              way = 2;
+            else if ((gx > 0) == (gy > 0))
+              way = 1;
+            else
+              way = 3;
+            direction[here + x] = way;
+          }
+        }
+      });
+  }
+
+  /**
+   * Method to keep only the pixels that are the strongest across their
+   * edge and mark them as weak or strong by the thresholds
+   * @param picture the picture (for its size and its row bands)
+   * @param magnitude the squared gradient magnitudes
+   * @param direction the gradient directions
+   * @param state the states to fill
+   * @param low the squared low threshold
+   * @param high the squared high threshold
+   */
+  private static void suppress(SimplePicture picture, int[] magnitude,
+                               byte[] direction, byte[] state,
+                               int low, int high)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    picture.forEachRowBand((startRow, endRow) ->
+      {
+        for (int y = startRow; y < endRow; y++)
+        {
+          for (int x = 0; x < width; x++)
+          {
+            int i = y * width + x;
+            int value = magnitude[i];
+            if (value < low || value == 0)
+            {
+              state[i] = NONE;
+              continue;
+            }
+
+            // the two neighbors across the edge
+            int dx;
+            int dy;
+            switch (direction[i])
+            {
+              case 0: dx = 1; dy = 0; break;
+              case 1: dx = 1; dy = 1; break;
+              case 2: dx = 0; dy = 1; break;
+              default: dx = -1; dy = 1; break;
+            }
+            int before = magnitudeAt(magnitude,width,height,x - dx,y - dy);
+            int after = magnitudeAt(magnitude,width,height,x + dx,y + dy);
+            if (value > before && value >= after)
+              state[i] = value >= high ? STRONG : WEAK;
+            else
+              state[i] = NONE;
+          }
+        }
+      });
+  }
+
+  /**
+   * Method to get a magnitude, with 0 past the edges
+   * @param magnitude the squared gradient magnitudes
+   * @param width the width of the plane
+   * @param height the height of the plane
+   * @param x the column
+   * @param y the row
+   * @return the magnitude or 0 if outside the plane
+   */
+  private static int magnitudeAt(int[] magnitude, int width, int height,
+                                 int x, int y)
+  {
+    if (x < 0 || y < 0 || x >= width || y >= height)
+      return 0;
+    return magnitude[y * width + x];
+  }
+
+  /**
+   * Method to turn weak pixels that touch strong pixels (through other
+   * edge pixels in any of the 8 directions) into strong pixels
+   * @param picture the picture (for its size)
+   * @param state the states to change
+   * @param stack a work array at least as big as the picture
+   */
+  private static void trace(SimplePicture picture, byte[] state,
+                            int[] stack)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+
+    // each pixel is pushed at most once, when it becomes strong
+    int top = 0;
+    for (int i = 0; i < state.length; i++)
+      if (state[i] == STRONG)
+        stack[top++] = i;
+    while (top > 0)
+    {
+      int i = stack[--top];
+      int x = i % width;
+      int y = i / width;
+      for (int ny = Math.max(y - 1,0); ny <= Math.min(y + 1,height - 1); ny++)
+      {
+        for (int nx = Math.max(x - 1,0); nx <= Math.min(x + 1,width - 1); nx++)
+        {
+          int n = ny * width + nx;
+          if (state[n] == WEAK)
+          {
+            state[n] = STRONG;
+            stack[top++] = n;
+          }
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,612 @@
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class that convolves pictures using the fast Fourier transform (FFT).
+ * The picture (with its border pixels added on) is padded out to a power
+ * of two in each direction, transformed, multiplied by the transform of
+ * the kernel (its spectrum), and transformed back.  This costs about the
+ * same for any size of kernel, so it is faster than working with the
+ * pixels directly once the kernel is big.  Convolution picks this way
+ * automatically when isFaster says it will be cheaper.
+ *
+ * Each transform is complex but the colors are real, so two colors are
+ * done at once: red goes in the real part and green in the imaginary
+ * part, and since the kernel is real the results come back the same way.
+ * Blue is done in a second transform.  The spectra of the last few
+ * kernels are kept (by kernel and padded size) so blurring many
+ * pictures of the same size only transforms the kernel once.  The kept
+ * spectra are limited to MAX_CACHED_BYTES in all and are only held by
+ * soft references, so the garbage collector can take them back if
+ * memory runs low.  The working arrays come from the ScratchPool.
+ */
+public class FftConvolution
+{
+
+  /** the most kernel spectra to keep */
+  public static final int MAX_CACHED_SPECTRA = 4;
+
+  /** the most bytes of kernel spectra to keep */
+  public static final long MAX_CACHED_BYTES = 64L << 20;
+
+  /**
+   * about how many spatial multiply-adds one FFT butterfly costs for
+   * each value at each level
+   */
+  private static final double BUTTERFLY_COST = 3;
+
+  /** the number of columns to transform together */
+  private static final int COLUMN_BLOCK = 8;
+
+  /** the biggest padded size (number of values) to try to transform */
+  private static final long MAX_SIZE = 1 << 26;
+
+  /** the spectra of recent kernels from the least to the most recent */
+  private static final Map<SpectrumKey,SoftReference<Spectrum>> spectra =
+    new LinkedHashMap<SpectrumKey,SoftReference<Spectrum>>(16,0.75f,true);
+
+  /** the bytes of the spectra in the cache (even ones already cleared) */
+  private static long cachedBytes;
+
+  ///////////////////////// public methods //////////////////////////////
+
+  /**
+   * Method to get the power of two to pad a length to
+   * @param length the length to pad
+   * @return the smallest power of two that is at least the length
+   */
+  public static int paddedSize(int length)
+  {
+    return length <= 1 ? 1 : Integer.highestOneBit(length - 1) << 1;
+  }
+
+  /**
+   * Method to estimate if convolving with the FFT is faster than
+   * convolving directly for a picture size and kernel.  It never is when
+   * the FFT's working arrays would take more than half of the most
+   * memory the heap can have.
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @param kernel the kernel to convolve with
+   * @return true if the FFT should be faster else false
+   */
+  public static boolean isFaster(int width, int height,
+                                 ConvolutionKernel kernel)
+  {
+    long fftWidth = paddedSize(width + kernel.getWidth() - 1);
+    long fftHeight = paddedSize(height + kernel.getHeight() - 1);
+    double size = fftWidth * fftHeight;
+    if (size > MAX_SIZE)
+      return false;
+
+    // the real and imaginary parts and the kernel's spectrum are 4
+    // doubles per padded value, and the red and green results 2 ints per
+    // pixel; the direct way needs next to nothing, so don't risk running
+    // out of memory to save time
+    double bytes = 32 * size + 8.0 * width * height;
+    if (bytes > Runtime.getRuntime().maxMemory() / 2)
+      return false;
+
+    // direct is one multiply-add per weight used for each of the 3 colors
+    double perPixel = kernel.isSeparable() ?
+      kernel.getWidth() + kernel.getHeight() :
+      (double) kernel.getWidth() * kernel.getHeight();
+    double direct = 3 * perPixel * width * height;
+
+    // two complex transforms there and back, each log2(size) levels,
+    // plus multiplying by the spectrum
+    double levels = Math.log(size) / Math.log(2);
+    double fft = 4 * BUTTERFLY_COST * size * levels + 2 * 6 * size;
+    return fft < direct;
+  }
+
+  /**
+   * Method to empty the cache of kernel spectra
+   */
+  public static void clearCache()
+  {
+    synchronized (spectra)
+    {
+      spectra.clear();
+      cachedBytes = 0;
+    }
+  }
+
+  ///////////////////////// convolution //////////////////////////////
+
+  /**
+   * Method to convolve using the FFT and hand each finished row to a
+   * sink.  The source is completely read before the first row is
+   * finished.
+   * @param picture the picture (for its size and its row bands)
+   * @param source the pixels to read
+   * @param kernel the kernel to use
+   * @param xIndex the column to use for each padded column
+   * @param yIndex the row to use for each padded row
+   * @param sink what to do with each finished row
+   */
+  static void convolve(SimplePicture picture, int[] source,
+                       ConvolutionKernel kernel, int[] xIndex, int[] yIndex,
+                       Convolution.RowSink sink)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    int size = width * height;
+    int paddedWidth = width + kernel.getWidth() - 1;
+    int paddedHeight = height + kernel.getHeight() - 1;
+    int fftWidth = paddedSize(paddedWidth);
+    int fftHeight = paddedSize(paddedHeight);
+    Fft rowFft = new Fft(fftWidth);
+    Fft columnFft = new Fft(fftHeight);
+    Spectrum spectrum = getSpectrum(kernel,rowFft,columnFft);
+    double scale = 1.0 / ((double) fftWidth * fftHeight);
+    double[] real = ScratchPool.acquireDoubles(fftWidth * fftHeight);
+    double[] imag = ScratchPool.acquireDoubles(fftWidth * fftHeight);
+    int[] red = ScratchPool.acquire(size);
+    int[] green = ScratchPool.acquire(size);
+    try
+    {
+      // red and green
+      load(picture,source,xIndex,yIndex,paddedWidth,paddedHeight,16,8,
+           real,imag,fftWidth,fftHeight);
+      transform(picture,rowFft,columnFft,spectrum,real,imag,paddedHeight,
+                height);
+      picture.forEachRowBand((startRow, endRow) ->
+        {
+          for (int y = startRow; y < endRow; y++)
+          {
+            for (int x = 0; x < width; x++)
+            {
+              red[y * width + x] =
+                (int) Math.round(real[y * fftWidth + x] * scale);
+              green[y * width + x] =
+                (int) Math.round(imag[y * fftWidth + x] * scale);
+            }
+          }
+        });
+
+      // blue
+      load(picture,source,xIndex,yIndex,paddedWidth,paddedHeight,0,-1,
+           real,imag,fftWidth,fftHeight);
+      transform(picture,rowFft,columnFft,spectrum,real,imag,paddedHeight,
+                height);
+      picture.forEachRowBand((startRow, endRow) ->
+        {
+          int[] redRow = ScratchPool.acquire(width);
+          int[] greenRow = ScratchPool.acquire(width);
+          int[] blueRow = ScratchPool.acquire(width);
+          try
+          {
+            for (int y = startRow; y < endRow; y++)
+            {
+              System.arraycopy(red,y * width,redRow,0,width);
+              System.arraycopy(green,y * width,greenRow,0,width);
+              for (int x = 0; x < width; x++)
+                blueRow[x] = (int) Math.round(real[y * fftWidth + x] * scale);
+              sink.accept(y,redRow,greenRow,blueRow);
+            }
+          }
+          finally
+          {
+            ScratchPool.release(redRow);
+            ScratchPool.release(greenRow);
+            ScratchPool.release(blueRow);
+          }
+        });
+    }
+    finally
+    {
+      ScratchPool.release(red);
+      ScratchPool.release(green);
+      ScratchPool.releaseDoubles(real);
+      ScratchPool.releaseDoubles(imag);
+    }
+  }
+
+  /**
+   * Method to load two colors of the padded picture into the real and
+   * imaginary parts, with zeros past the padded picture
+   * @param picture the picture (for its row bands)
+   * @param source the pixels to read
+   * @param xIndex the column to use for each padded column
+   * @param yIndex the row to use for each padded row
+   * @param paddedWidth the width with the border pixels
+   * @param paddedHeight the height with the border pixels
+   * @param realShift the shift of the color for the real part
+   * @param imagShift the shift of the color for the imaginary part,
+   * or -1 for zeros
+   * @param real the real parts to fill
+   * @param imag the imaginary parts to fill
+   * @param fftWidth the padded power of two width
+   * @param fftHeight the padded power of two height
+   */
+  private static void load(SimplePicture picture, int[] source,
+                           int[] xIndex, int[] yIndex,
+                           int paddedWidth, int paddedHeight,
+                           int realShift, int imagShift,
+                           double[] real, double[] imag,
+                           int fftWidth, int fftHeight)
+  {
+    int width = picture.getWidth();
+    picture.forEachRowBand(0,fftHeight,(startRow, endRow) ->
+      {
+        for (int y = startRow; y < endRow; y++)
+        {
+          int start = y * fftWidth;
+          int x = 0;
+          if (y < paddedHeight)
+          {
+            int rowStart = yIndex[y] * width;
+            for (; x < paddedWidth; x++)
+            {
+              int rgb = source[rowStart + xIndex[x]];
+              real[start + x] = (rgb >> realShift) & 0xff;
+              imag[start + x] = imagShift < 0 ? 0 : (rgb >> imagShift) & 0xff;
+            }
+          }
+          Arrays.fill(real,start + x,start + fftWidth,0);
+          Arrays.fill(imag,start + x,start + fftWidth,0);
+        }
+      });
+  }
+
+  /**
+   * Method to transform the loaded values, multiply them by the kernel's
+   * spectrum, and transform them back.  Only the rows that can hold
+   * values are transformed forward and only the rows that are needed
+   * are transformed back.
+   * @param picture the picture (for its row bands)
+   * @param rowFft the transform for the rows
+   * @param columnFft the transform for the columns
+   * @param spectrum the kernel's spectrum
+   * @param real the real parts
+   * @param imag the imaginary parts
+   * @param usedRows the number of rows that may not be zero
+   * @param neededRows the number of rows needed in the result
+   */
+  private static void transform(SimplePicture picture, Fft rowFft,
+                                Fft columnFft, Spectrum spectrum,
+                                double[] real, double[] imag,
+                                int usedRows, int neededRows)
+  {
+    int fftWidth = rowFft.size;
+    int fftHeight = columnFft.size;
+    picture.forEachRowBand(0,usedRows,(startRow, endRow) ->
+      {
+        for (int y = startRow; y < endRow; y++)
+          rowFft.transform(real,imag,y * fftWidth,false);
+      });
+
+    // columns: there, multiply, and back again while the columns are 
+    // out (a few next to each other at a time to use whole cache lines)
+    picture.forEachRowBand(0,(fftWidth + COLUMN_BLOCK - 1) / COLUMN_BLOCK,
+                           (startBlock, endBlock) ->
+      {
+        double[] columnReal = new double[COLUMN_BLOCK * fftHeight];
+        double[] columnImag = new double[COLUMN_BLOCK * fftHeight];
+        for (int block = startBlock; block < endBlock; block++)
+        {
+          int startCol = block * COLUMN_BLOCK;
+          int count = Math.min(COLUMN_BLOCK,fftWidth - startCol);
+          for (int y = 0; y < fftHeight; y++)
+          {
+            for (int c = 0; c < count; c++)
+            {
+              columnReal[c * fftHeight + y] = real[y * fftWidth + startCol + c];
+              columnImag[c * fftHeight + y] = imag[y * fftWidth + startCol + c];
+            }
+          }
+          for (int c = 0; c < count; c++)
+          {
+            int offset = c * fftHeight;
+            int spectrumOffset = (startCol + c) * fftHeight;
+            columnFft.transform(columnReal,columnImag,offset,false);
+            for (int y = 0; y < fftHeight; y++)
+            {
+              double a = columnReal[offset + y];
+              double b = columnImag[offset + y];
+              double sr = spectrum.real[spectrumOffset + y];
+              double si = spectrum.imag[spectrumOffset + y];
+              columnReal[offset + y] = a * sr - b * si;
+              columnImag[offset + y] = a * si + b * sr;
+            }
+            columnFft.transform(columnReal,columnImag,offset,true);
+          }
+          for (int y = 0; y < neededRows; y++)
+          {
+            for (int c = 0; c < count; c++)
+            {
+              real[y * fftWidth + startCol + c] = columnReal[c * fftHeight + y];
+              imag[y * fftWidth + startCol + c] = columnImag[c * fftHeight + y];
+            }
+          }
+        }
+      });
+
+    picture.forEachRowBand(0,neededRows,(startRow, endRow) ->
+      {
+        for (int y = startRow; y < endRow; y++)
+          rowFft.transform(real,imag,y * fftWidth,true);
+      });
+  }
+
+  /**
+   * Method to get the spectrum of a kernel from the cache or make it.
+   * The kernel is placed flipped and wrapped around the origin so that
+   * multiplying by the spectrum does the same as the direct convolution.
+   * @param kernel the kernel
+   * @param rowFft the transform for the rows
+   * @param columnFft the transform for the columns
+   * @return the spectrum of the kernel
+   */
+  private static Spectrum getSpectrum(ConvolutionKernel kernel, Fft rowFft,
+                                      Fft columnFft)
+  {
+    int fftWidth = rowFft.size;
+    int fftHeight = columnFft.size;
+    SpectrumKey key = new SpectrumKey(kernel,fftWidth,fftHeight);
+    synchronized (spectra)
+    {
+      SoftReference<Spectrum> reference = spectra.get(key);
+      Spectrum spectrum = reference == null ? null : reference.get();
+      if (spectrum != null)
+        return spectrum;
+    }
+
+    // the spectrum is kept column by column since it is used a column
+    // at a time, so it is made in place that way: columns first (only
+    // the columns the kernel is in aren't all zeros), then the rows a
+    // few at a time through a small buffer
+    double[] columnReal = new double[fftWidth * fftHeight];
+    double[] columnImag = new double[fftWidth * fftHeight];
+    for (int i = 0; i < kernel.getWidth(); i++)
+    {
+      int offset = (fftWidth - i) % fftWidth * fftHeight;
+      for (int j = 0; j < kernel.getHeight(); j++)
+        columnReal[offset + (fftHeight - j) % fftHeight] = kernel.getWeight(i,j);
+      columnFft.transform(columnReal,columnImag,offset,false);
+    }
+    double[] rowReal = new double[COLUMN_BLOCK * fftWidth];
+    double[] rowImag = new double[COLUMN_BLOCK * fftWidth];
+    for (int startRow = 0; startRow < fftHeight; startRow += COLUMN_BLOCK)
+    {
+      int count = Math.min(COLUMN_BLOCK,fftHeight - startRow);
+      for (int x = 0; x < fftWidth; x++)
+      {
+        for (int r = 0; r < count; r++)
+        {
+          rowReal[r * fftWidth + x] = columnReal[x * fftHeight + startRow + r];
+          rowImag[r * fftWidth + x] = columnImag[x * fftHeight + startRow + r];
+        }
+      }
+      for (int r = 0; r < count; r++)
+        rowFft.transform(rowReal,rowImag,r * fftWidth,false);
+      for (int x = 0; x < fftWidth; x++)
+      {
+        for (int r = 0; r < count; r++)
+        {
+          columnReal[x * fftHeight + startRow + r] = rowReal[r * fftWidth + x];
+          columnImag[x * fftHeight + startRow + r] = rowImag[r * fftWidth + x];
+        }
+      }
+    }
+
+    Spectrum spectrum = new Spectrum(columnReal,columnImag);
+    cache(key,spectrum);
+    return spectrum;
+  }
+
+  /**
+   * Method to put a spectrum in the cache, dropping the least recently
+   * used spectra (and any the garbage collector took back) to stay under
+   * MAX_CACHED_SPECTRA and MAX_CACHED_BYTES.  A spectrum bigger than
+   * MAX_CACHED_BYTES isn't kept at all.
+   * @param key the kernel and padded size
+   * @param spectrum the spectrum
+   */
+  private static void cache(SpectrumKey key, Spectrum spectrum)
+  {
+    long bytes = spectrumBytes(key);
+    if (bytes > MAX_CACHED_BYTES)
+      return;
+    synchronized (spectra)
+    {
+      SoftReference<Spectrum> old =
+        spectra.put(key,new SoftReference<Spectrum>(spectrum));
+      if (old != null)
+        cachedBytes -= bytes;
+      cachedBytes += bytes;
+      Iterator<Map.Entry<SpectrumKey,SoftReference<Spectrum>>> entries =
+        spectra.entrySet().iterator();
+      while (entries.hasNext())
+      {
+        Map.Entry<SpectrumKey,SoftReference<Spectrum>> entry = entries.next();
+        boolean full = spectra.size() > MAX_CACHED_SPECTRA ||
+          cachedBytes > MAX_CACHED_BYTES;
+        if (!entry.getKey().equals(key) &&
+            (full || entry.getValue().get() == null))
+        {
+          entries.remove();
+          cachedBytes -= spectrumBytes(entry.getKey());
+        }
+      }
+    }
+  }
+
+  /**
+   * Method to get the bytes a spectrum uses
+   * @param key the kernel and padded size of the spectrum
+   * @return the bytes of its real and imaginary parts
+   */
+  private static long spectrumBytes(SpectrumKey key)
+  {
+    return 16L * key.width * key.height;
+  }
+
+  ///////////////////////// helper classes //////////////////////////////
+
+  /**
+   * Class for the transform of a kernel
+   */
+  private static class Spectrum
+  {
+    /** the real parts in column-major order */
+    private final double[] real;
+
+    /** the imaginary parts in column-major order */
+    private final double[] imag;
+
+    /**
+     * Constructor that takes the real and imaginary parts
+     * @param real the real parts
+     * @param imag the imaginary parts
+     */
+    private Spectrum(double[] real, double[] imag)
+    {
+      this.real = real;
+      this.imag = imag;
+    }
+  }
+
+  /**
+   * Class for the key of a cached spectrum: the kernel and padded size
+   */
+  private static class SpectrumKey
+  {
+    /** the kernel */
+    private final ConvolutionKernel kernel;
+
+    /** the padded width */
+    private final int width;
+
+    /** the padded height */
+    private final int height;
+
+    /**
+     * Constructor that takes the kernel and padded size
+     * @param kernel the kernel
+     * @param width the padded width
+     * @param height the padded height
+     */
+    private SpectrumKey(ConvolutionKernel kernel, int width, int height)
+    {
+      this.kernel = kernel;
+      this.width = width;
+      this.height = height;
+    }
+
+    /**
+     * Method to check if another key has the same kernel and size
+     * @param other the object to compare to
+     * @return true if it is the same key else false
+     */
+    public boolean equals(Object other)
+    {
+      if (!(other instanceof SpectrumKey))
+        return false;
+      SpectrumKey key = (SpectrumKey) other;
+      return width == key.width && height == key.height &&
+        kernel.equals(key.kernel);
+    }
+
+    /**
+     * Method to get a hash code made from the kernel and size
+     * @return the hash code
+     */
+    public int hashCode()
+    {
+      return (kernel.hashCode() * 31 + width) * 31 + height;
+    }
+  }
+
+  /**
+   * Class for a radix-2 complex FFT of one power of two size, with the
+   * bit-reversed order and the sines and cosines worked out once
+   */
+  private static class Fft
+  {
+    /** the number of values to transform */
+    private final int size;
+
+    /** the bit-reversed index of each index */
+    private final int[] reversed;
+
+    /** the cosines of the angles around the circle */
+    private final double[] cos;
+
+    /** the sines of the angles around the circle */
+    private final double[] sin;
+
+    /**
+     * Constructor that takes the size
+     * @param size the number of values (a power of two)
+     */
+    private Fft(int size)
+    {
+      this.size = size;
+      reversed = new int[size];
+      int bits = Integer.numberOfTrailingZeros(size);
+      for (int i = 1; i < size; i++)
+        reversed[i] = Integer.reverse(i) >>> (32 - bits);
+      cos = new double[Math.max(1,size / 2)];
+      sin = new double[cos.length];
+      for (int k = 0; k < cos.length; k++)
+      {
+        double angle = 2 * Math.PI * k / size;
+        cos[k] = Math.cos(angle);
+        sin[k] = Math.sin(angle);
+      }
+    }
+
+    /**
+     * Method to transform values in place (the inverse is not scaled)
+     * @param real the real parts
+     * @param imag the imaginary parts
+     * @param offset the index of the first value
+     * @param inverse true for the inverse transform
+     */
+    private void transform(double[] real, double[] imag, int offset,
+                           boolean inverse)
+    {
+      for (int i = 1; i < size; i++)
+      {
+        int j = reversed[i];
+        if (j > i)
+        {
+          double temp = real[offset + i];
+          real[offset + i] = real[offset + j];
+          real[offset + j] = temp;
+          temp = imag[offset + i];
+          imag[offset + i] = imag[offset + j];
+          imag[offset + j] = temp;
+        }
+      }
+
+      double sign = inverse ? 1 : -1;
+      for (int half = 1; half < size; half *= 2)
+      {
+        int step = size / (2 * half);
+        for (int start = offset; start < offset + size; start += 2 * half)
+        {
+          for (int k = 0; k < half; k++)
+          {
+            double c = cos[k * step];
+            double s = sign * sin[k * step];
+            int a = start + k;
+            int b = a + half;
+            double tempReal = real[b] * c - imag[b] * s;
+            double tempImag = real[b] * s + imag[b] * c;
+            real[b] = real[a] - tempReal;
+            imag[b] = imag[a] - tempImag;
+            real[a] += tempReal;
+            imag[a] += tempImag;
+          }
+        }
+      }
+    }
+  }
+
+}
@@ -13,12 +13,18 @@ public class ImageDisplay extends JPanel implements Scrollable
   /////////////////////////// fields (attributes ///////////////////////////
   /** the image to draw */
   private Image image;         
+  /** the width to draw the image at */
+  private int drawWidth;
+  /** the height to draw the image at */
+  private int drawHeight;
   /** the preferred size of the display */
   private Dimension prefSize;  
   /** the current x index */
   private int currentX = 0;    
   /** the current y index */
   private int currentY = 0;    
+  /** the image the visible part is scaled into (grown when needed) */
+  private BufferedImage areaImage;
   
   //////////////////////////// constructors /////////////////////////////////
   
@@ -29,7 +35,9 @@ public class ImageDisplay extends JPanel implements Scrollable
   public ImageDisplay(Image theImage)
   {
     image = theImage;
-    prefSize = new Dimension(image.getWidth(this),image.getHeight(this));
+    drawWidth = image.getWidth(this);
+    drawHeight = image.getHeight(this);
+    prefSize = new Dimension(drawWidth,drawHeight);
     setPreferredSize(prefSize);
     revalidate();
   }
@@ -92,9 +100,23 @@ public class ImageDisplay extends JPanel implements Scrollable
    * @param theImage the new image to use
    */
   public void setImage(Image theImage)
+  {
+    setImage(theImage,theImage.getWidth(this),theImage.getHeight(this));
+  }
+  
+  /**
+   * Method to set the image and the size to draw it at.  The image is
+   * scaled when it is drawn, so a small image can be shown zoomed in.
+   * @param theImage the new image to use
+   * @param width the width to draw the image at
+   * @param height the height to draw the image at
+   */
+  public void setImage(Image theImage, int width, int height)
   {
     image = theImage;
-    setPreferredSize(new Dimension(image.getWidth(this),image.getHeight(this)));
+    drawWidth = width;
+    drawHeight = height;
+    setPreferredSize(new Dimension(width,height));
     repaint();
   }
   
@@ -159,13 +181,19 @@ public class ImageDisplay extends JPanel implements Scrollable
     int xEnd = currentX + num;
     int yStart = currentY - num;
     int yEnd = currentY + num;
-    int width = image.getWidth(this);
+    int width = drawWidth;
     int maxX = width - 1;
-    int height = image.getHeight(this);
+    int height = drawHeight;
     int maxY = height - 1;
     
-    // draw the image
-    g.drawImage(image,0,0,this);
+    // draw only the part of the image that needs painting
+    Rectangle area = g.getClipBounds();
+    if (area == null)
+      area = new Rectangle(0,0,width,height);
+    else
+      area = area.intersection(new Rectangle(0,0,width,height));
+    if (!area.isEmpty())
+      drawArea(g,area);
     
     // check if the current index is in the image
     if (currentX >= 0 && currentX < width &&
@@ -213,4 +241,165 @@ public class ImageDisplay extends JPanel implements Scrollable
     }
   }
   
+  /**
+   * Method to draw part of the image at the drawing size.  An image that
+   * is already that size is just copied.  The pixels of a packed int
+   * image are scaled into a buffer the size of the part (nearest pixel
+   * when zooming in, bilinear when shrinking), so only the pixels that
+   * show are ever worked out.  Other images are drawn scaled by Java 2D.
+   * @param g the graphics object for drawing with
+   * @param area the part to draw in display coordinates
+   */
+  private void drawArea(Graphics g, Rectangle area)
+  {
+    int imageWidth = image.getWidth(this);
+    int imageHeight = image.getHeight(this);
+    if (imageWidth <= 0 || imageHeight <= 0)
+      return;
+    int x1 = area.x;
+    int y1 = area.y;
+    int x2 = area.x + area.width;
+    int y2 = area.y + area.height;
+    if (imageWidth == drawWidth && imageHeight == drawHeight)
+    {
+      g.drawImage(image,x1,y1,x2,y2,x1,y1,x2,y2,this);
+      return;
+    }
+    
+    if (!isPackedInt(image))
+    {
+      Graphics2D g2 = (Graphics2D) g.create();
+      g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                          drawWidth > imageWidth ?
+                          RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR :
+                          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g2.scale((double) drawWidth / imageWidth,(double) drawHeight / imageHeight);
+      g2.drawImage(image,0,0,this);
+      g2.dispose();
+      return;
+    }
+    
+    if (areaImage == null || areaImage.getWidth() < area.width ||
+        areaImage.getHeight() < area.height)
+    {
+      int bufferWidth = Math.max(area.width,areaImage == null ? 0 : areaImage.getWidth());
+      int bufferHeight = Math.max(area.height,areaImage == null ? 0 : areaImage.getHeight());
+      areaImage = new BufferedImage(bufferWidth,bufferHeight,BufferedImage.TYPE_INT_RGB);
+    }
+    scaleArea((BufferedImage) image,area,areaImage);
+    g.drawImage(areaImage,x1,y1,x2,y2,0,0,area.width,area.height,this);
+  }
+  
+  /**
+   * Method to check if an image keeps each pixel in one int of an array
+   * @param theImage the image to check
+   * @return true if it is a TYPE_INT_RGB buffered image
+   */
+  private static boolean isPackedInt(Image theImage)
+  {
+    if (!(theImage instanceof BufferedImage))
+      return false;
+    BufferedImage bimg = (BufferedImage) theImage;
+    return bimg.getType() == BufferedImage.TYPE_INT_RGB &&
+      bimg.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel;
+  }
+  
+  /**
+   * Method to scale part of an image into a buffer
+   * @param source the packed int image to read
+   * @param area the part to work out in display coordinates
+   * @param buffer the image to put the scaled pixels in (at its top left)
+   */
+  private void scaleArea(BufferedImage source, Rectangle area, BufferedImage buffer)
+  {
+    WritableRaster raster = source.getRaster();
+    int[] from = ((DataBufferInt) raster.getDataBuffer()).getData();
+    int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+    int offset = raster.getDataBuffer().getOffset() - raster.getSampleModelTranslateX() -
+      raster.getSampleModelTranslateY() * stride;
+    int[] to = ((DataBufferInt) buffer.getRaster().getDataBuffer()).getData();
+    int toStride = buffer.getWidth();
+    int imageWidth = source.getWidth();
+    int imageHeight = source.getHeight();
+    boolean nearest = drawWidth >= imageWidth && drawHeight >= imageHeight;
+    
+    // the source columns and rows (and how far to the next one in 256ths)
+    int[] col = new int[area.width];
+    int[] colFraction = new int[area.width];
+    int[] row = new int[area.height];
+    int[] rowFraction = new int[area.height];
+    mapPositions(area.x,drawWidth,imageWidth,nearest,col,colFraction);
+    mapPositions(area.y,drawHeight,imageHeight,nearest,row,rowFraction);
+    
+    for (int y = 0; y < area.height; y++)
+    {
+      int top = offset + row[y] * stride;
+      int bottom = offset + Math.min(row[y] + 1,imageHeight - 1) * stride;
+      int fy = rowFraction[y];
+      int out = y * toStride;
+      for (int x = 0; x < area.width; x++)
+      {
+        int left = col[x];
+        if (nearest)
+          to[out + x] = from[top + left];
+        else
+        {
+          int right = Math.min(left + 1,imageWidth - 1);
+          int fx = colFraction[x];
+          to[out + x] = blend(blend(from[top + left],from[top + right],fx),
+                              blend(from[bottom + left],from[bottom + right],fx),fy);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Method to work out which source pixel each display pixel of a line
+   * comes from
+   * @param start the first display position
+   * @param drawSize the display size along the line
+   * @param imageSize the image size along the line
+   * @param nearest true for the nearest pixel or false for the pixel
+   * before the display pixel's center (for bilinear)
+   * @param position the array to put the source positions in
+   * @param fraction the array to put how far past the source position 
+   * the center is in 256ths (0 for the nearest pixel)
+   */
+  private static void mapPositions(int start, int drawSize, int imageSize,
+                                   boolean nearest, int[] position,
+                                   int[] fraction)
+  {
+    double scale = (double) imageSize / drawSize;
+    for (int i = 0; i < position.length; i++)
+    {
+      double center = (start + i + 0.5) * scale;
+      if (nearest)
+      {
+        position[i] = Math.min((int) center,imageSize - 1);
+        fraction[i] = 0;
+      }
+      else
+      {
+        double before = Math.max(center - 0.5,0);
+        position[i] = Math.min((int) before,imageSize - 1);
+        fraction[i] = (int) ((before - position[i]) * 256);
+      }
+    }
+  }
+  
+  /**
+   * Method to mix two colors
+   * @param a the first color
+   * @param b the second color
+   * @param fraction how much of the second color in 256ths
+   * @return the mixed color
+   */
+  private static int blend(int a, int b, int fraction)
+  {
+    int keep = 256 - fraction;
+    int redBlue = ((a & 0xff00ff) * keep + (b & 0xff00ff) * fraction) >>> 8;
+    int green = ((a & 0xff00) * keep + (b & 0xff00) * fraction) >>> 8;
+    return (redBlue & 0xff00ff) | (green & 0xff00);
+  }
+  
 }
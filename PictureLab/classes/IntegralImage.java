@@ -0,0 +1,238 @@
+/**
+ * Class for the integral images (summed-area tables) of a picture: for
+ * each color, the sum of all the values above and to the left of each
+ * position.  Once they are made, the sum of any rectangle of the picture
+ * takes just four lookups no matter how big it is, which makes region
+ * averages and box blurs of any size cheap.  The sums are longs so even
+ * huge pictures can't overflow.
+ *
+ * An integral image is a snapshot; it remembers the modification count
+ * of the picture when it was made so isCurrent can tell when the picture
+ * has changed since.  Picture keeps one and makes a new one when needed.
+ */
+public class IntegralImage
+{
+
+  ////////////////////////// fields ///////////////////////////////////
+
+  /** the width of the picture */
+  private final int width;
+
+  /** the height of the picture */
+  private final int height;
+
+  /**
+   * the red sums, (width + 1) by (height + 1) with a row and column of
+   * zeros first
+   */
+  private final long[] red;
+
+  /** the green sums, laid out like the red sums */
+  private final long[] green;
+
+  /** the blue sums, laid out like the red sums */
+  private final long[] blue;
+
+  /** the picture the sums are for */
+  private final SimplePicture picture;
+
+  /** the modification count of the picture when the sums were made */
+  private final int modificationCount;
+
+  ////////////////////// constructors /////////////////////////////////
+
+  /**
+   * Constructor that makes the integral images of a picture.  Rows are
+   * summed in parallel bands when the picture is in parallel mode.
+   * @param picture the picture to sum
+   */
+  public IntegralImage(SimplePicture picture)
+  {
+    this.picture = picture;
+    width = picture.getWidth();
+    height = picture.getHeight();
+    int stride = width + 1;
+    red = new long[stride * (height + 1)];
+    green = new long[red.length];
+    blue = new long[red.length];
+    int[] raster = picture.getRasterDataForReading();
+    modificationCount = picture.getModificationCount();
+
+    // sum along each row
+    picture.forEachRowBand((startRow, endRow) ->
+      {
+        for (int y = startRow; y < endRow; y++)
+        {
+          long redSum = 0;
+          long greenSum = 0;
+          long blueSum = 0;
+          int from = y * width;
+          int to = (y + 1) * stride + 1;
+          for (int x = 0; x < width; x++)
+          {
+            int rgb = raster[from + x];
+            redSum += (rgb >> 16) & 0xff;
+            greenSum += (rgb >> 8) & 0xff;
+            blueSum += rgb & 0xff;
+            red[to + x] = redSum;
+            green[to + x] = greenSum;
+            blue[to + x] = blueSum;
+          }
+        }
+      });
+
+    // then add each row to the one below it, with bands of columns
+    // done at the same time
+    picture.forEachRowBand(1,stride,(startCol, endCol) ->
+      {
+        for (int y = 2; y <= height; y++)
+        {
+          int above = (y - 1) * stride;
+          int here = y * stride;
+          for (int x = startCol; x < endCol; x++)
+          {
+            red[here + x] += red[above + x];
+            green[here + x] += green[above + x];
+            blue[here + x] += blue[above + x];
+          }
+        }
+      });
+  }
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to get the width of the picture these sums are for
+   * @return the width
+   */
+  public int getWidth() { return width; }
+
+  /**
+   * Method to get the height of the picture these sums are for
+   * @return the height
+   */
+  public int getHeight() { return height; }
+
+  /**
+   * Method to check if the picture is unchanged since the sums were made
+   * @return true if the sums are still good else false
+   */
+  public boolean isCurrent()
+  {
+    return picture.getModificationCount() == modificationCount;
+  }
+
+  /**
+   * Method to get the sum of one color over a rectangle that is inside
+   * the picture (x1 and y1 are one past the last column and row)
+   * @param sums the sums for the color
+   * @param x0 the first column
+   * @param y0 the first row
+   * @param x1 one past the last column
+   * @param y1 one past the last row
+   * @return the sum of the color over the rectangle
+   */
+  private long sum(long[] sums, int x0, int y0, int x1, int y1)
+  {
+    int stride = width + 1;
+    return sums[y1 * stride + x1] - sums[y0 * stride + x1] -
+      sums[y1 * stride + x0] + sums[y0 * stride + x0];
+  }
+
+  /**
+   * Method to get the sums of the red, green, and blue values over a
+   * rectangle.  Any part of the rectangle outside the picture is skipped.
+   * @param x the x of the top left corner of the rectangle
+   * @param y the y of the top left corner of the rectangle
+   * @param rectWidth the width of the rectangle
+   * @param rectHeight the height of the rectangle
+   * @return an array with the red, green, and blue sums
+   */
+  public long[] regionSum(int x, int y, int rectWidth, int rectHeight)
+  {
+    int x0 = Math.max(x,0);
+    int y0 = Math.max(y,0);
+    int x1 = (int) Math.min((long) x + rectWidth,width);
+    int y1 = (int) Math.min((long) y + rectHeight,height);
+    if (x0 >= x1 || y0 >= y1)
+      return new long[3];
+    return new long[] {sum(red,x0,y0,x1,y1), sum(green,x0,y0,x1,y1),
+      sum(blue,x0,y0,x1,y1)};
+  }
+
+  /**
+   * Method to get the number of pixels of a rectangle that are inside
+   * the picture
+   * @param x the x of the top left corner of the rectangle
+   * @param y the y of the top left corner of the rectangle
+   * @param rectWidth the width of the rectangle
+   * @param rectHeight the height of the rectangle
+   * @return the number of pixels inside the picture
+   */
+  public long regionArea(int x, int y, int rectWidth, int rectHeight)
+  {
+    long across = Math.min((long) x + rectWidth,width) - Math.max(x,0);
+    long down = Math.min((long) y + rectHeight,height) - Math.max(y,0);
+    return across <= 0 || down <= 0 ? 0 : across * down;
+  }
+
+  /**
+   * Method to get the average red, green, and blue values over a
+   * rectangle, counting only the pixels inside the picture
+   * @param x the x of the top left corner of the rectangle
+   * @param y the y of the top left corner of the rectangle
+   * @param rectWidth the width of the rectangle
+   * @param rectHeight the height of the rectangle
+   * @return an array with the red, green, and blue averages
+   */
+  public double[] regionMean(int x, int y, int rectWidth, int rectHeight)
+  {
+    long area = regionArea(x,y,rectWidth,rectHeight);
+    if (area == 0)
+      throw new IllegalArgumentException(
+        "The rectangle doesn't have any pixels in the picture");
+    long[] sums = regionSum(x,y,rectWidth,rectHeight);
+    return new double[] {(double) sums[0] / area, (double) sums[1] / area,
+      (double) sums[2] / area};
+  }
+
+  /**
+   * Method to set each pixel of a picture to the average of the square
+   * around it that reaches radius pixels in each direction, using these
+   * sums.  Near the edges only the pixels inside the picture are
+   * averaged.  Each pixel takes the same time for any radius.  The
+   * picture must be the same size as the sums and may be the picture
+   * they were made from.
+   * @param target the picture to change
+   * @param radius how far the square reaches from its center
+   */
+  public void boxBlur(SimplePicture target, int radius)
+  {
+    if (radius < 0)
+      throw new IllegalArgumentException("The radius can't be negative");
+    if (target.getWidth() != width || target.getHeight() != height)
+      throw new IllegalArgumentException(
+        "The picture must be the same size as the integral image");
+    int[] raster = target.getRasterData();
+    target.forEachRowBand((startRow, endRow) ->
+      {
+        for (int y = startRow; y < endRow; y++)
+        {
+          int y0 = Math.max(y - radius,0);
+          int y1 = Math.min(y + radius + 1,height);
+          for (int x = 0; x < width; x++)
+          {
+            int x0 = Math.max(x - radius,0);
+            int x1 = Math.min(x + radius + 1,width);
+            long area = (long) (x1 - x0) * (y1 - y0);
+            long half = area / 2;
+            int r = (int) ((sum(red,x0,y0,x1,y1) + half) / area);
+            int g = (int) ((sum(green,x0,y0,x1,y1) + half) / area);
+            int b = (int) ((sum(blue,x0,y0,x1,y1) + half) / area);
+            raster[y * width + x] = (r << 16) | (g << 8) | b;
+          }
+        }
+      });
+  }
+
+}
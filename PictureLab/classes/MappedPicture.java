@@ -0,0 +1,652 @@
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class for a picture whose pixels are kept in a memory-mapped file
+ * instead of in an array on the heap, so even a picture of several
+ * gigabytes doesn't slow down garbage collection, and other programs can
+ * map the same file to share the pixels.
+ *
+ * The file starts with a header of HEADER_SIZE bytes (see the HEADER
+ * constants) followed by one int per pixel in row-major order, each
+ * 0xRRGGBB and little-endian.  Since one mapping can't be bigger than 2
+ * gigabytes, the pixels are mapped in chunks of whole rows.  (In Java 17
+ * MemorySegment, which could map it all at once, is only in the
+ * jdk.incubator.foreign incubator module, which has to be added with
+ * --add-modules to compile and run.)  Pixels are read and set with
+ * getBasicPixel and setBasicPixel (or a Pixel or PixelCursor) just like
+ * a simple picture, and whole rows at a time with getRow and setRow.
+ * toPicture and fromPicture copy straight between the file and a simple
+ * picture's raster.
+ *
+ * Changes go to the file when the operating system writes the pages;
+ * call force to write them right away.  A file with a checksum in its
+ * header (see RawPictureFile) keeps it until the first pixel is changed,
+ * when the checksum is taken out of the header.
+ */
+public class MappedPicture implements DigitalPicture, Closeable
+{
+
+  /** the number that starts every picture file ("PLRW" in ASCII) */
+  public static final int MAGIC = 0x57524c50;
+
+  /** the version of the file layout */
+  public static final int VERSION = 1;
+
+  /** the number of bytes in the header */
+  public static final int HEADER_SIZE = 32;
+
+  /** the pixel type for one 0xRRGGBB int per pixel */
+  public static final int PIXEL_RGB = 1;
+
+  /** where the magic number is in the header */
+  static final int HEADER_MAGIC = 0;
+
+  /** where the version is in the header */
+  static final int HEADER_VERSION = 4;
+
+  /** where the width is in the header */
+  static final int HEADER_WIDTH = 8;
+
+  /** where the height is in the header */
+  static final int HEADER_HEIGHT = 12;
+
+  /** where the pixel type is in the header */
+  static final int HEADER_PIXEL_TYPE = 16;
+
+  /** where the flags are in the header (see the FLAG constants) */
+  static final int HEADER_FLAGS = 20;
+
+  /** where the checksum of the pixel data is in the header */
+  static final int HEADER_CHECKSUM = 24;
+
+  /** the flag for pixels stored compressed (these can't be mapped) */
+  static final int FLAG_COMPRESSED = 1;
+
+  /** the flag for a header with a CRC-32 of the pixel bytes */
+  static final int FLAG_CHECKSUM = 2;
+
+  /** the most bytes mapped in one chunk */
+  private static final int CHUNK_BYTES = 1 << 30;
+
+  /** the file name of the picture */
+  private String fileName;
+
+  /** the title of the picture */
+  private String title;
+
+  /** the width of the picture */
+  private int width;
+
+  /** the height of the picture */
+  private int height;
+
+  /** the number of rows in each chunk */
+  private int rowsPerChunk;
+
+  /** the channel to the file */
+  private FileChannel channel;
+
+  /** the mapped chunks of the file */
+  private MappedByteBuffer[] chunks;
+
+  /** the chunks as ints (little-endian) */
+  private IntBuffer[] chunkInts;
+
+  /** true if the pixels can be changed */
+  private boolean writable;
+
+  /** the flags in the file's header */
+  private int flags;
+
+  /** true if the header has a checksum that no change has spoiled yet */
+  private boolean checksumHeld;
+
+  /** the frame the picture is shown in */
+  private PictureFrame pictureFrame;
+
+  ///////////////////////// constructors //////////////////////////////
+
+  /**
+   * Constructor that maps an existing picture file to read and change
+   * @param fileName the name of the picture file
+   * @throws IOException if the file can't be mapped or isn't a picture
+   * file
+   */
+  public MappedPicture(String fileName) throws IOException
+  {
+    this(fileName,true);
+  }
+
+  /**
+   * Constructor that maps an existing picture file
+   * @param fileName the name of the picture file
+   * @param writable true to be able to change the pixels, false to only
+   * read them
+   * @throws IOException if the file can't be mapped or isn't a picture
+   * file
+   */
+  public MappedPicture(String fileName, boolean writable) throws IOException
+  {
+    map(fileName,writable);
+  }
+
+  /**
+   * Constructor that makes a new all black picture file (replacing any
+   * file with that name) and maps it
+   * @param fileName the name of the picture file
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @throws IOException if the file can't be made
+   */
+  public MappedPicture(String fileName, int width, int height)
+    throws IOException
+  {
+    if (width <= 0 || height <= 0)
+      throw new IllegalArgumentException(
+        "The width and height must be more than 0");
+    try (FileChannel out = FileChannel.open(new File(fileName).toPath(),
+                                            StandardOpenOption.CREATE,
+                                            StandardOpenOption.WRITE,
+                                            StandardOpenOption.TRUNCATE_EXISTING))
+    {
+      ByteBuffer header = makeHeader(width,height,0,0);
+      while (header.hasRemaining())
+        out.write(header);
+
+      // the pixels are the zeros of a file grown to its full length
+      ByteBuffer last = ByteBuffer.allocate(1);
+      out.write(last,HEADER_SIZE + 4L * width * height - 1);
+    }
+    map(fileName,true);
+  }
+
+  /**
+   * Method to make a picture file with a copy of a simple picture
+   * @param picture the picture to copy
+   * @param fileName the name of the picture file (any file with that name
+   * is replaced)
+   * @return the mapped picture
+   * @throws IOException if the file can't be made
+   */
+  public static MappedPicture fromPicture(SimplePicture picture,
+                                          String fileName)
+    throws IOException
+  {
+    MappedPicture mapped = new MappedPicture(fileName,picture.getWidth(),
+                                             picture.getHeight());
+    int[] raster = picture.getRasterDataForReading();
+    int width = picture.getWidth();
+    for (int y = 0; y < mapped.height; y++)
+      mapped.putRow(y,raster,y * width);
+    mapped.setTitle(picture.getTitle());
+    return mapped;
+  }
+
+  ///////////////////////// public methods //////////////////////////////
+
+  /**
+   * Method to get the file name of the picture
+   * @return the file name
+   */
+  public String getFileName() { return fileName; }
+
+  /**
+   * Method to get the title of the picture
+   * @return the title
+   */
+  public String getTitle() { return title; }
+
+  /**
+   * Method to set the title of the picture
+   * @param title the title to use
+   */
+  public void setTitle(String title)
+  {
+    this.title = title;
+    if (pictureFrame != null)
+      pictureFrame.setTitle(title);
+  }
+
+  /**
+   * Method to get the width of the picture in pixels
+   * @return the width
+   */
+  public int getWidth() { return width; }
+
+  /**
+   * Method to get the height of the picture in pixels
+   * @return the height
+   */
+  public int getHeight() { return height; }
+
+  /**
+   * Method to get an image of the picture.  This is a copy on the heap.
+   * @return a copy of the picture as an image
+   */
+  public Image getImage()
+  {
+    return getBufferedImage();
+  }
+
+  /**
+   * Method to get a buffered image of the picture.  This is a copy on
+   * the heap, so changing the image doesn't change the picture.
+   * @return a copy of the picture as a buffered image
+   */
+  public BufferedImage getBufferedImage()
+  {
+    return toPicture().getBufferedImage();
+  }
+
+  /**
+   * Method to return the pixel value as an int for the given x and y location
+   * @param x the x coordinate of the pixel
+   * @param y the y coordinate of the pixel
+   * @return the pixel value as an integer (alpha, red, green, blue)
+   */
+  public int getBasicPixel(int x, int y)
+  {
+    checkBounds(x,y);
+    return chunkInts[y / rowsPerChunk].get((y % rowsPerChunk) * width + x) |
+      0xff000000;
+  }
+
+  /**
+   * Method to set the value of a pixel in the picture from an int
+   * @param x the x coordinate of the pixel
+   * @param y the y coordinate of the pixel
+   * @param rgb the new rgb value of the pixel (alpha, red, green, blue)
+   */
+  public void setBasicPixel(int x, int y, int rgb)
+  {
+    checkBounds(x,y);
+    if (checksumHeld)
+      dropChecksum();
+    chunkInts[y / rowsPerChunk].put((y % rowsPerChunk) * width + x,
+                                    rgb & 0xffffff);
+  }
+
+  /**
+   * Method to copy a row of pixels into an array
+   * @param y the row
+   * @param row the array to put the pixels in (0xRRGGBB, at least width
+   * long)
+   */
+  public void getRow(int y, int[] row)
+  {
+    getRow(y,row,0);
+  }
+
+  /**
+   * Method to copy a row of pixels into part of an array
+   * @param y the row
+   * @param row the array to put the pixels in (0xRRGGBB)
+   * @param offset where in the array to put the first pixel
+   */
+  public void getRow(int y, int[] row, int offset)
+  {
+    checkBounds(0,y);
+    IntBuffer ints = chunkInts[y / rowsPerChunk].duplicate();
+    ints.position((y % rowsPerChunk) * width);
+    ints.get(row,offset,width);
+  }
+
+  /**
+   * Method to set a row of pixels from an array
+   * @param y the row
+   * @param row the new pixels (0xRRGGBB, at least width long)
+   */
+  public void setRow(int y, int[] row)
+  {
+    checkBounds(0,y);
+    if (checksumHeld)
+      dropChecksum();
+    IntBuffer ints = chunkInts[y / rowsPerChunk];
+    int start = (y % rowsPerChunk) * width;
+
+    // keep only the red, green, and blue like setBasicPixel
+    for (int x = 0; x < width; x++)
+      ints.put(start + x,row[x] & 0xffffff);
+  }
+
+  /**
+   * Method to copy the picture into a new picture on the heap.  The
+   * pixels go straight from the file into the new picture's raster
+   * (a new image starts black, so it isn't filled first).
+   * @return the new picture
+   */
+  public Picture toPicture()
+  {
+    Picture picture = new Picture(new BufferedImage(width,height,
+                                                    BufferedImage.TYPE_INT_RGB));
+    int[] raster = picture.getRasterData();
+    for (int y = 0; y < height; y++)
+      getRow(y,raster,y * width);
+    if (title != null)
+      picture.setTitle(title);
+    return picture;
+  }
+
+  /**
+   * Method to get a pixel object for the given x and y location
+   * @param x  the x location of the pixel in the picture
+   * @param y  the y location of the pixel in the picture
+   * @return a Pixel object for this location
+   */
+  public Pixel getPixel(int x, int y)
+  {
+    return new Pixel(this,x,y);
+  }
+
+  /**
+   * Method to get a one-dimensional array of Pixels for this picture.
+   * For a big picture use forEachPixel instead, which doesn't make a
+   * Pixel object for each location.
+   * @return a one-dimensional array of Pixel objects starting with y=0
+   * to y=height-1 and x=0 to x=width-1.
+   */
+  public Pixel[] getPixels()
+  {
+    Pixel[] pixelArray = new Pixel[width * height];
+    for (int row = 0; row < height; row++)
+      for (int col = 0; col < width; col++)
+        pixelArray[row * width + col] = new Pixel(this,col,row);
+    return pixelArray;
+  }
+
+  /**
+   * Method to get a two-dimensional array of Pixels for this picture
+   * @return a two-dimensional array of Pixel objects in row-major order.
+   */
+  public Pixel[][] getPixels2D()
+  {
+    Pixel[][] pixelArray = new Pixel[height][width];
+    for (int row = 0; row < height; row++)
+      for (int col = 0; col < width; col++)
+        pixelArray[row][col] = new Pixel(this,col,row);
+    return pixelArray;
+  }
+
+  /**
+   * Method to load the picture with the passed image.  The image is
+   * drawn over the top left of the picture.
+   * @param image the image to use
+   */
+  public void load(Image image)
+  {
+    Picture picture = toPicture();
+    Graphics2D graphics2d = picture.createGraphics();
+    graphics2d.drawImage(image,0,0,null);
+    graphics2d.dispose();
+    int[] raster = picture.getRasterDataForReading();
+    for (int y = 0; y < height; y++)
+      putRow(y,raster,y * width);
+    show();
+  }
+
+  /**
+   * Method to map a different picture file in place of this one
+   * @param fileName the name of the picture file
+   * @return true if success else false
+   */
+  public boolean load(String fileName)
+  {
+    try {
+      close();
+      map(fileName,true);
+      return true;
+    } catch (Exception ex) {
+      System.out.println("There was an error trying to open " + fileName);
+      return false;
+    }
+  }
+
+  /**
+   * Method to show the picture in a picture frame.  The frame shows a
+   * copy of the picture on the heap.
+   */
+  public void show()
+  {
+    if (pictureFrame != null)
+      pictureFrame.updateImageAndShowIt();
+    else
+      pictureFrame = new PictureFrame(this);
+  }
+
+  /**
+   * Method to open a picture explorer on a copy (on the heap) of this
+   * picture
+   */
+  public void explore()
+  {
+    new PictureExplorer(toPicture());
+  }
+
+  /**
+   * Method to write the picture to an image file
+   * @param fileName the name of the file to write the picture to
+   * @return true if success else false
+   */
+  public boolean write(String fileName)
+  {
+    return toPicture().write(fileName);
+  }
+
+  /**
+   * Method to write any changed pixels to the file now
+   */
+  public void force()
+  {
+    if (writable)
+      for (MappedByteBuffer chunk : chunks)
+        chunk.force();
+  }
+
+  /**
+   * Method to write any changed pixels and close the file.  The memory
+   * stays mapped until the garbage collector frees the picture, but the
+   * pixels can't be used after this.
+   * @throws IOException if the file can't be closed
+   */
+  public void close() throws IOException
+  {
+    if (channel == null)
+      return;
+    force();
+    channel.close();
+    channel = null;
+    checksumHeld = false;
+    chunks = new MappedByteBuffer[0];
+    chunkInts = new IntBuffer[0];
+  }
+
+  /**
+   * Method to return a string with information about this picture
+   * @return a string with information about the picture
+   */
+  public String toString()
+  {
+    return "Mapped Picture, filename " + fileName + " height " + height +
+      " width " + width;
+  }
+
+  ///////////////////////// helper methods //////////////////////////////
+
+  /**
+   * Method to make a buffer with a picture file header
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @param flags the flags
+   * @param checksum the checksum of the pixel data (used if the flags
+   * include FLAG_CHECKSUM)
+   * @return the header, ready to write
+   */
+  static ByteBuffer makeHeader(int width, int height, int flags,
+                               int checksum)
+  {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(HEADER_MAGIC,MAGIC);
+    header.putInt(HEADER_VERSION,VERSION);
+    header.putInt(HEADER_WIDTH,width);
+    header.putInt(HEADER_HEIGHT,height);
+    header.putInt(HEADER_PIXEL_TYPE,PIXEL_RGB);
+    header.putInt(HEADER_FLAGS,flags);
+    header.putInt(HEADER_CHECKSUM,checksum);
+    return header;
+  }
+
+  /**
+   * Method to check a picture file header
+   * @param header the header (little-endian, at least HEADER_SIZE bytes)
+   * @param fileName the name of the file (for the error message)
+   * @throws IOException if it isn't a header this class can read
+   */
+  static void checkHeader(ByteBuffer header, String fileName)
+    throws IOException
+  {
+    if (header.getInt(HEADER_MAGIC) != MAGIC)
+      throw new IOException(fileName + " is not a picture file");
+    if (header.getInt(HEADER_VERSION) != VERSION)
+      throw new IOException(fileName + " is version " +
+                            header.getInt(HEADER_VERSION) +
+                            " but only version " + VERSION + " can be read");
+    if (header.getInt(HEADER_PIXEL_TYPE) != PIXEL_RGB)
+      throw new IOException(fileName + " has an unknown pixel type");
+    if (header.getInt(HEADER_WIDTH) <= 0 || header.getInt(HEADER_HEIGHT) <= 0)
+      throw new IOException(fileName + " has a bad width or height");
+  }
+
+  /**
+   * Method to read the header of a picture file and map its pixels
+   * @param fileName the name of the picture file
+   * @param canWrite true to be able to change the pixels
+   * @throws IOException if the file can't be mapped or isn't a picture
+   * file
+   */
+  private void map(String fileName, boolean canWrite) throws IOException
+  {
+    FileChannel newChannel = canWrite ?
+      FileChannel.open(new File(fileName).toPath(),StandardOpenOption.READ,
+                       StandardOpenOption.WRITE) :
+      FileChannel.open(new File(fileName).toPath(),StandardOpenOption.READ);
+    try
+    {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.order(ByteOrder.LITTLE_ENDIAN);
+      while (header.hasRemaining())
+        if (newChannel.read(header,header.position()) < 0)
+          throw new IOException(fileName + " is not a picture file");
+      checkHeader(header,fileName);
+      int newFlags = header.getInt(HEADER_FLAGS);
+      if ((newFlags & FLAG_COMPRESSED) != 0)
+        throw new IOException(fileName +
+                              " is compressed and can't be mapped");
+      int newWidth = header.getInt(HEADER_WIDTH);
+      int newHeight = header.getInt(HEADER_HEIGHT);
+      long rowBytes = 4L * newWidth;
+      if (newChannel.size() < HEADER_SIZE + rowBytes * newHeight)
+        throw new IOException(fileName + " is too short for its size");
+
+      int newRowsPerChunk = (int) Math.max(1,CHUNK_BYTES / rowBytes);
+      int chunkCount = (newHeight + newRowsPerChunk - 1) / newRowsPerChunk;
+      MappedByteBuffer[] newChunks = new MappedByteBuffer[chunkCount];
+      IntBuffer[] newInts = new IntBuffer[chunkCount];
+      FileChannel.MapMode mode = canWrite ? FileChannel.MapMode.READ_WRITE :
+        FileChannel.MapMode.READ_ONLY;
+      for (int i = 0; i < chunkCount; i++)
+      {
+        int rows = Math.min(newRowsPerChunk,newHeight - i * newRowsPerChunk);
+        newChunks[i] = newChannel.map(mode,
+                                      HEADER_SIZE + i * newRowsPerChunk * rowBytes,
+                                      rows * rowBytes);
+        newChunks[i].order(ByteOrder.LITTLE_ENDIAN);
+        newInts[i] = newChunks[i].asIntBuffer();
+      }
+
+      channel = newChannel;
+      chunks = newChunks;
+      chunkInts = newInts;
+      writable = canWrite;
+      width = newWidth;
+      height = newHeight;
+      rowsPerChunk = newRowsPerChunk;
+
+      // the checksum is only dropped from the header when a pixel is
+      // changed, so just opening a file to change it keeps the checksum
+      flags = newFlags;
+      checksumHeld = canWrite && (flags & FLAG_CHECKSUM) != 0;
+      this.fileName = fileName;
+      if (title == null)
+        title = fileName;
+    }
+    catch (IOException | RuntimeException ex)
+    {
+      newChannel.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Method to take the checksum flag out of the file's header before the
+   * first change to the pixels, since the checksum won't be right after
+   */
+  private void dropChecksum()
+  {
+    flags &= ~FLAG_CHECKSUM;
+    ByteBuffer flagBytes = ByteBuffer.allocate(4);
+    flagBytes.order(ByteOrder.LITTLE_ENDIAN);
+    flagBytes.putInt(0,flags);
+    try
+    {
+      while (flagBytes.hasRemaining())
+        channel.write(flagBytes,HEADER_FLAGS + flagBytes.position());
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException("Couldn't change the header of " +
+                                     fileName,ex);
+    }
+    checksumHeld = false;
+  }
+
+  /**
+   * Method to copy a row of pixels from an array into the file as they
+   * are
+   * @param y the row
+   * @param row the array with the pixels
+   * @param offset where in the array the row starts
+   */
+  private void putRow(int y, int[] row, int offset)
+  {
+    if (checksumHeld)
+      dropChecksum();
+    IntBuffer ints = chunkInts[y / rowsPerChunk].duplicate();
+    ints.position((y % rowsPerChunk) * width);
+    ints.put(row,offset,width);
+  }
+
+  /**
+   * Method to check that a location is in the picture
+   * @param x the x coordinate
+   * @param y the y coordinate
+   */
+  private void checkBounds(int x, int y)
+  {
+    if (x < 0 || x >= width || y < 0 || y >= height)
+      throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+  }
+
+}
@@ -0,0 +1,248 @@
+import java.util.Arrays;
+
+/**
+ * Class that sets each pixel to the median of the square around it, one
+ * color at a time.  A median gets rid of salt-and-pepper noise (single
+ * pixels that are far too light or dark) without blurring edges.
+ *
+ * It uses the constant-time method of Perreault and Hebert: there is a
+ * histogram of the values in each column of the square, and a histogram
+ * for the whole square that is made by adding and removing whole column
+ * histograms as the square slides along a row.  Moving down a row only
+ * changes each column histogram by one value out and one value in.  The
+ * histograms are split into 16 coarse buckets and 256 fine ones, and the
+ * fine counts of a bucket in the square's histogram are only brought up
+ * to date when the median falls in that bucket, so the time per pixel
+ * is about the same for any radius.  Pixels past the edges repeat the
+ * edge pixels.
+ *
+ * Bands of rows are done at the same time when the picture is in
+ * parallel mode, and each band is done in tiles of columns so the
+ * column histograms stay in the cache.
+ */
+public class MedianFilter
+{
+
+  /** the number of columns done at a time in each band */
+  public static final int TILE_WIDTH = 512;
+
+  /** the number of fine buckets in a histogram */
+  private static final int FINE = 256;
+
+  /** the number of coarse buckets in a histogram */
+  private static final int COARSE = 16;
+
+  ///////////////////////// public methods //////////////////////////////
+
+  /**
+   * Method to set each color of each pixel to the median of that color
+   * in the square around it
+   * @param picture the picture to change
+   * @param radius how far the square reaches from its center
+   */
+  public static void median(SimplePicture picture, int radius)
+  {
+    if (radius < 0)
+      throw new IllegalArgumentException("The radius can't be negative");
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    int size = width * height;
+    if (radius == 0 || size == 0)
+      return;
+
+    // read from a copy since the bands write rows other bands read
+    int[] raster = picture.getRasterData();
+    int[] source = ScratchPool.acquire(size);
+    System.arraycopy(raster,0,source,0,size);
+    try
+    {
+      picture.forEachRowBand((startRow, endRow) ->
+        {
+          int columns = Math.min(TILE_WIDTH,width) + 2 * radius;
+          Histograms histograms = new Histograms(columns);
+          for (int tileStart = 0; tileStart < width; tileStart += TILE_WIDTH)
+          {
+            int tileEnd = Math.min(tileStart + TILE_WIDTH,width);
+            for (int shift = 16; shift >= 0; shift -= 8)
+              filterTile(source,raster,width,height,radius,startRow,endRow,
+                         tileStart,tileEnd,shift,histograms);
+          }
+        });
+    }
+    finally
+    {
+      ScratchPool.release(source);
+    }
+  }
+
+  ///////////////////////// helper methods //////////////////////////////
+
+  /**
+   * Class for the histograms used by one band
+   */
+  private static class Histograms
+  {
+    /** the fine counts of each column, 256 per column */
+    private final int[] columnFine;
+
+    /** the coarse counts of each column, 16 per column */
+    private final int[] columnCoarse;
+
+    /** the fine counts of the square */
+    private final int[] fine = new int[FINE];
+
+    /** the coarse counts of the square */
+    private final int[] coarse = new int[COARSE];
+
+    /**
+     * the first column of the square each coarse bucket's fine counts
+     * are up to date for
+     */
+    private final int[] updatedAt = new int[COARSE];
+
+    /**
+     * Constructor that takes the most columns a tile needs
+     * @param columns the number of columns including the border
+     */
+    private Histograms(int columns)
+    {
+      columnFine = new int[columns * FINE];
+      columnCoarse = new int[columns * COARSE];
+    }
+  }
+
+  /**
+   * Method to add or remove one row of a color from the column
+   * histograms of a tile
+   * @param source the pixels to read
+   * @param rowStart the index of the first pixel of the row
+   * @param width the width of the picture
+   * @param firstX the picture column of the first histogram column
+   * (may be past the left edge)
+   * @param columns the number of histogram columns
+   * @param shift the shift of the color in a pixel
+   * @param change 1 to add the row or -1 to remove it
+   * @param histograms the histograms to change
+   */
+  private static void updateColumns(int[] source, int rowStart, int width,
+                                    int firstX, int columns, int shift,
+                                    int change, Histograms histograms)
+  {
+    int[] columnFine = histograms.columnFine;
+    int[] columnCoarse = histograms.columnCoarse;
+    for (int p = 0; p < columns; p++)
+    {
+      int x = Math.min(Math.max(firstX + p,0),width - 1);
+      int value = (source[rowStart + x] >> shift) & 0xff;
+      columnFine[p * FINE + value] += change;
+      columnCoarse[p * COARSE + (value >> 4)] += change;
+    }
+  }
+
+  /**
+   * Method to find the medians of one color for the rows of a band in
+   * one tile of columns
+   * @param source the pixels to read
+   * @param raster the pixels to write
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @param radius how far the square reaches from its center
+   * @param startRow the first row of the band
+   * @param endRow one past the last row of the band
+   * @param tileStart the first column of the tile
+   * @param tileEnd one past the last column of the tile
+   * @param shift the shift of the color in a pixel
+   * @param histograms the histograms to use
+   */
+  private static void filterTile(int[] source, int[] raster, int width,
+                                 int height, int radius, int startRow,
+                                 int endRow, int tileStart, int tileEnd,
+                                 int shift, Histograms histograms)
+  {
+    int diameter = 2 * radius + 1;
+    int firstX = tileStart - radius;
+    int columns = tileEnd - tileStart + 2 * radius;
+    int rank = diameter * diameter / 2;
+    int[] columnFine = histograms.columnFine;
+    int[] columnCoarse = histograms.columnCoarse;
+    int[] fine = histograms.fine;
+    int[] coarse = histograms.coarse;
+    int[] updatedAt = histograms.updatedAt;
+    int mask = ~(0xff << shift);
+
+    // column histograms for the square around the first row
+    Arrays.fill(columnFine,0,columns * FINE,0);
+    Arrays.fill(columnCoarse,0,columns * COARSE,0);
+    for (int k = -radius; k <= radius; k++)
+    {
+      int row = Math.min(Math.max(startRow + k,0),height - 1);
+      updateColumns(source,row * width,width,firstX,columns,shift,1,
+                    histograms);
+    }
+
+    for (int y = startRow; y < endRow; y++)
+    {
+      if (y > startRow)
+      {
+        int oldRow = Math.max(y - radius - 1,0);
+        int newRow = Math.min(y + radius,height - 1);
+        updateColumns(source,oldRow * width,width,firstX,columns,shift,-1,
+                      histograms);
+        updateColumns(source,newRow * width,width,firstX,columns,shift,1,
+                      histograms);
+      }
+
+      // the square's coarse counts for the first column of the tile
+      Arrays.fill(coarse,0);
+      for (int p = 0; p < diameter; p++)
+        for (int b = 0; b < COARSE; b++)
+          coarse[b] += columnCoarse[p * COARSE + b];
+      Arrays.fill(updatedAt,Integer.MIN_VALUE / 2);
+
+      int rowStart = y * width;
+      for (int t = 0; t < tileEnd - tileStart; t++)
+      {
+        if (t > 0)
+        {
+          int out = (t - 1) * COARSE;
+          int in = (t + diameter - 1) * COARSE;
+          for (int b = 0; b < COARSE; b++)
+            coarse[b] += columnCoarse[in + b] - columnCoarse[out + b];
+        }
+
+        // find the coarse bucket with the median
+        int count = 0;
+        int bucket = 0;
+        while (count + coarse[bucket] <= rank)
+          count += coarse[bucket++];
+
+        // bring the fine counts of that bucket up to date
+        int first = bucket * 16;
+        int last = updatedAt[bucket];
+        if (t - last >= diameter)
+        {
+          Arrays.fill(fine,first,first + 16,0);
+          for (int p = t; p < t + diameter; p++)
+            for (int v = first; v < first + 16; v++)
+              fine[v] += columnFine[p * FINE + v];
+        }
+        else
+        {
+          for (int p = last; p < t; p++)
+            for (int v = first; v < first + 16; v++)
+              fine[v] += columnFine[(p + diameter) * FINE + v] -
+                columnFine[p * FINE + v];
+        }
+        updatedAt[bucket] = t;
+
+        // find the median in the bucket
+        int value = first;
+        while (count + fine[value] <= rank)
+          count += fine[value++];
+        int i = rowStart + tileStart + t;
+        raster[i] = (raster[i] & mask) | (value << shift);
+      }
+    }
+  }
+
+}
@@ -15,6 +15,15 @@ import java.util.List; // resolves problem with java.awt.List and java.util.List
  */
 public class Picture extends SimplePicture 
 {
+    ///////////////////// fields ////////////////////////////////////////
+
+    /** the lookup table used by posterize, it only needs to be built once */
+    private static final ChannelLut POSTERIZE_LUT = ChannelLut.posterize(4);
+
+    /** the integral image from the last time one was needed (may be 
+     * out of date, see getIntegralImage) */
+    private IntegralImage integralImage;
+
     ///////////////////// constructors //////////////////////////////////
 
     /**
@@ -88,187 +97,68 @@ public class Picture extends SimplePicture
     /** Method to set the blue to 0 */
     public void zeroBlue()
     {
-        Pixel[][] pixels = this.getPixels2D();
-        for (Pixel[] rowArray : pixels)
-        {
-            for (Pixel pixelObj : rowArray)
-            {
-                pixelObj.setBlue(0);
-            }
-        }
+        this.applyFilter(RasterKernels::zeroBlue);
     }
     
     /** Method to set the green to 0 */
     public void zeroGreen()
     {
-        Pixel[][] pixels = this.getPixels2D();
-        for (Pixel[] rowArray : pixels)
-        {
-            for (Pixel pixelObj : rowArray)
-            {
-                pixelObj.setGreen(0);
-            }
-        }
+        this.applyFilter(RasterKernels::zeroGreen);
     }
 
     /** Method to set red and green to 0 */
     public void keepOnlyBlue()
     {
-        Pixel[][] pixels = this.getPixels2D();
-        for (Pixel[] rowArray : pixels)
-        {
-            for (Pixel pixelObj : rowArray)
-            {
-                pixelObj.setRed(0);
-                pixelObj.setGreen(0);
-            }
-        }
+        this.applyFilter(RasterKernels::keepOnlyBlue);
     }
 
     /** Method to negate all the pixels in a picture */
     public void negate()
     {
-        Pixel[][] pixels = this.getPixels2D();
-        for (Pixel[] rowArray : pixels)
-        {
-            for (Pixel pixelObj : rowArray)
-            {
-                pixelObj.setRed(255-pixelObj.getRed());
-                pixelObj.setGreen(255-pixelObj.getGreen());
-                pixelObj.setBlue(255-pixelObj.getBlue());
-            }
-        }
+        this.applyFilter(RasterKernels::negate);
     }
 
     /** Method to grayscale all the pixels in a picture */
     public void grayscale()
     {
-        Pixel[][] pixels = this.getPixels2D();
-        int avg = 0;
-        for (Pixel[] rowArray : pixels)
-        {
-            for (Pixel pixelObj : rowArray)
-            {
-                avg = (pixelObj.getRed()+pixelObj.getGreen()+pixelObj.getBlue())/3;
-                pixelObj.setRed(avg);
-                pixelObj.setGreen(avg);
-                pixelObj.setBlue(avg);
-            }
-        }
+        this.applyFilter(RasterKernels::grayscale);
     }
     
     /** Method to use a sepia filter */
     public void sepia()
     {
-        Pixel[][] pixels = this.getPixels2D();
-        int avg = 0;
-        int originalRed = 0;
-        int originalBlue = 0;
-        int originalGreen = 0;
-        
-        for (Pixel[] rowArray : pixels)
-        {
-            for (Pixel pixelObj : rowArray)
-            {
-                originalRed = pixelObj.getRed();
-                originalBlue = pixelObj.getBlue();
-                originalGreen = pixelObj.getGreen();
-                avg = (pixelObj.getRed()+pixelObj.getGreen()+pixelObj.getBlue())/3;
-                pixelObj.setRed(avg);
-                pixelObj.setGreen(avg);
-                pixelObj.setBlue(avg);
-                if (pixelObj.getRed() < 60)
-                {
-                    pixelObj.setRed((int)(originalRed*.9));
-                    pixelObj.setBlue((int)(originalBlue*.9));
-                    pixelObj.setGreen((int)(originalGreen*.9));
-                }
-                else if (pixelObj.getRed() < 190)
-                {
-                    pixelObj.setBlue((int)(originalRed*.8));
-                }
-                else
-                {
-                    pixelObj.setBlue((int)(originalRed*.9));
-                }
-            }
-        }
+        this.applyFilter(RasterKernels::sepia);
     }
     
     /** Method to posterize a picture */
     public void posterize()
     {
-        Pixel[][] pixels = this.getPixels2D();
-        for (Pixel[] rowArray : pixels)
-        {
-            for (Pixel pixelObj : rowArray)
-            {
-                if (pixelObj.getRed() < 64)
-                {
-                    pixelObj.setRed(32);
-                }
-                else if (pixelObj.getRed() < 128)
-                {
-                    pixelObj.setRed(96);
-                }
-                else if (pixelObj.getRed() < 192)
-                {
-                    pixelObj.setRed(160);
-                }
-                else
-                {
-                    pixelObj.setRed(224);
-                }
-                
-                if (pixelObj.getBlue() < 64)
-                {
-                    pixelObj.setBlue(32);
-                }
-                else if (pixelObj.getBlue() < 128)
-                {
-                    pixelObj.setBlue(96);
-                }
-                else if (pixelObj.getBlue() < 192)
-                {
-                    pixelObj.setBlue(160);
-                }
-                else
-                {
-                    pixelObj.setBlue(224);
-                }
-                
-                if (pixelObj.getGreen() < 64)
-                {
-                    pixelObj.setGreen(32);
-                }
-                else if (pixelObj.getGreen() < 128)
-                {
-                    pixelObj.setGreen(96);
-                }
-                else if (pixelObj.getGreen() < 192)
-                {
-                    pixelObj.setGreen(160);
-                }
-                else
-                {
-                    pixelObj.setGreen(224);
-                }
-            }
-        }
+        this.applyLut(POSTERIZE_LUT);
+    }
+    
+    /** Method to apply a lookup table filter to the whole picture
+     * in one pass
+     * @param lut the lookup table to use
+     */
+    public void applyLut(ChannelLut lut)
+    {
+        this.applyFilter(lut);
+    }
+
+    /** Method to apply a pipeline of operations to this picture.
+     * Point operations next to each other in the pipeline are
+     * done together in one pass over the picture.
+     * @param pipeline the operations to apply
+     */
+    public void apply(PicturePipeline pipeline)
+    {
+        pipeline.applyTo(this);
     }
 
     /** Method to see the fishies */
     public void fixUnderwater()
     {
-        Pixel[][] pixels = this.getPixels2D();
-        for (Pixel[] rowArray : pixels)
-        {
-            for (Pixel pixelObj : rowArray)
-            {
-                pixelObj.setGreen(pixelObj.getGreen()-100);
-                pixelObj.setBlue(pixelObj.getBlue()-90);
-            }
-        }
+        this.applyFilter(RasterKernels::fixUnderwater);
     }
 
     /** Method that mirrors the picture around a 
@@ -276,17 +166,13 @@ public class Picture extends SimplePicture
      * from left to right */
     public void mirrorVertical()
     {
-        Pixel[][] pixels = this.getPixels2D();
-        Pixel leftPixel = null;
-        Pixel rightPixel = null;
-        int width = pixels[0].length;
-        for (int row = 0; row < pixels.length; row++)
+        int width = this.getWidth();
+        for (int row = 0; row < this.getHeight(); row++)
         {
             for (int col = 0; col < width / 2; col++)
             {
-                leftPixel = pixels[row][col];
-                rightPixel = pixels[row][width - 1 - col];
-                rightPixel.setColor(leftPixel.getColor());
+                this.setBasicPixel(width - 1 - col, row, 
+                    this.getBasicPixel(col, row));
             }
         } 
     }
@@ -296,17 +182,13 @@ public class Picture extends SimplePicture
      * from right to left */
     public void mirrorVerticalRightToLeft()
     {
-        Pixel[][] pixels = this.getPixels2D();
-        Pixel leftPixel = null;
-        Pixel rightPixel = null;
-        int width = pixels[0].length;
-        for (int row = 0; row < pixels.length/2; row++)
+        int width = this.getWidth();
+        for (int row = 0; row < this.getHeight()/2; row++)
         {
             for (int col = 0; col < width; col++)
             {
-                leftPixel = pixels[row][col];
-                rightPixel = pixels[row][width - 1 - col];
-                leftPixel.setColor(rightPixel.getColor());
+                this.setBasicPixel(col, row, 
+                    this.getBasicPixel(width - 1 - col, row));
             }
         } 
     }
@@ -316,18 +198,14 @@ public class Picture extends SimplePicture
      * from top to bottom */
     public void mirrorHorizontal()
     {
-        Pixel[][] pixels = this.getPixels2D();
-        Pixel topPixel = null;
-        Pixel bottomPixel = null;
-        int cols = pixels[0].length;
-        int rows = pixels.length;
+        int cols = this.getWidth();
+        int rows = this.getHeight();
         for (int row = 0; row < rows/2; row++)
         {
             for (int col = 0; col < cols; col++)
             {
-                topPixel = pixels[row][col];
-                bottomPixel = pixels[rows-row-1][col];
-                bottomPixel.setColor(topPixel.getColor());
+                this.setBasicPixel(col, rows-row-1, 
+                    this.getBasicPixel(col, row));
             }
         } 
     }
@@ -337,18 +215,14 @@ public class Picture extends SimplePicture
      * from bottom to top */
     public void mirrorHorizontalBotToTop()
     {
-        Pixel[][] pixels = this.getPixels2D();
-        Pixel topPixel = null;
-        Pixel bottomPixel = null;
-        int cols = pixels[0].length;
-        int rows = pixels.length;
+        int cols = this.getWidth();
+        int rows = this.getHeight();
         for (int row = 0; row < rows/2; row++)
         {
             for (int col = 0; col < cols; col++)
             {
-                topPixel = pixels[row][col];
-                bottomPixel = pixels[rows-row-1][col];
-                topPixel.setColor(bottomPixel.getColor());
+                this.setBasicPixel(col, row, 
+                    this.getBasicPixel(col, rows-row-1));
             }
         } 
     }  
@@ -358,45 +232,87 @@ public class Picture extends SimplePicture
      * on the diagonal line */
     public void mirrorDiagonal()
     {
-        Pixel[][] pixels = this.getPixels2D();
-        Pixel bottomLeftPixel = null;
-        Pixel topRightPixel = null;
-        int cols = pixels[0].length;
-        int rows = pixels.length;
-        int smallerSide = 0;
+        int width = this.getWidth();
+        int smallerSide = Math.min(width, this.getHeight());
+        int[] raster = this.getRasterData();
+
+        // work on tiles so that reading down the columns 
+        // doesn't miss the cache on every pixel
+        this.forEachRowBand(0, smallerSide, (startRow, endRow) ->
+            RasterTransforms.mirrorDiagonal(raster, width, smallerSide, 
+                startRow, endRow));
+    }
 
-        if (rows < cols)
-        {
-            smallerSide = rows;
-        }
-        else if (cols < rows)
-        {
-            smallerSide = cols;
-        }
-        else
-        {
-            smallerSide = cols;
-        }
+    /** Method to create a new picture that is this picture
+     * turned 90 degrees to the right (clockwise)
+     * @return the turned picture
+     */
+    public Picture rotate90()
+    {
+        return transposeInto(true, false);
+    }
 
-        for (int row = 0; row < smallerSide; row++)
-        {
-            for (int col = 0; col < smallerSide; col++)
-            {
-                topRightPixel = pixels[row][col];
-                bottomLeftPixel = pixels[col][row];
-                topRightPixel.setColor(bottomLeftPixel.getColor());
-            }
-        } 
+    /** Method to create a new picture that is this picture
+     * turned 180 degrees
+     * @return the turned picture
+     */
+    public Picture rotate180()
+    {
+        Picture result = new Picture(new BufferedImage(this.getWidth(), 
+                this.getHeight(), BufferedImage.TYPE_INT_RGB));
+        int[] source = this.getRasterDataForReading();
+        int[] target = result.getRasterData();
+        int width = this.getWidth();
+        this.forEachRowBand((startRow, endRow) ->
+            RasterTransforms.reverse(source, target, startRow * width,
+                endRow * width));
+        return result;
+    }
+
+    /** Method to create a new picture that is this picture
+     * turned 90 degrees to the left (counterclockwise)
+     * @return the turned picture
+     */
+    public Picture rotate270()
+    {
+        return transposeInto(false, true);
+    }
+
+    /** Method to create a new picture with the rows of this
+     * picture as its columns (flipped over the diagonal from
+     * the top left to the bottom right)
+     * @return the transposed picture
+     */
+    public Picture transpose()
+    {
+        return transposeInto(false, false);
+    }
+
+    /** Method to create a new picture with the rows and columns
+     * of this picture swapped, using tiles to stay in the cache
+     * @param flipColumns true to reverse the columns of the result
+     * @param flipRows true to reverse the rows of the result
+     * @return the new picture
+     */
+    private Picture transposeInto(boolean flipColumns, boolean flipRows)
+    {
+        int width = this.getWidth();
+        int height = this.getHeight();
+        Picture result = new Picture(new BufferedImage(height, width, 
+                BufferedImage.TYPE_INT_RGB));
+        int[] source = this.getRasterDataForReading();
+        int[] target = result.getRasterData();
+        this.forEachRowBand((startRow, endRow) ->
+            RasterTransforms.transpose(source, width, height, target,
+                startRow, endRow, flipColumns, flipRows));
+        return result;
     }
 
     /** Mirror just part of a picture of a temple */
     public int mirrorTemple()
     {
         int mirrorPoint = 276;
-        Pixel leftPixel = null;
-        Pixel rightPixel = null;
         int count = 0;
-        Pixel[][] pixels = this.getPixels2D();
 
         // loop through the rows
         for (int row = 27; row < 97; row++)
@@ -405,10 +321,8 @@ public class Picture extends SimplePicture
             for (int col = 13; col < mirrorPoint; col++)
             {
                 count ++;
-                leftPixel = pixels[row][col];      
-                rightPixel = pixels[row]                       
-                [mirrorPoint - col + mirrorPoint];
-                rightPixel.setColor(leftPixel.getColor());
+                this.setBasicPixel(mirrorPoint - col + mirrorPoint, row, 
+                    this.getBasicPixel(col, row));
             }
         }
         return count;
@@ -418,9 +332,6 @@ public class Picture extends SimplePicture
     public void mirrorArms()
     {
         int mirrorPoint = 204;
-        Pixel leftPixel = null;
-        Pixel rightPixel = null;
-        Pixel[][] pixels = this.getPixels2D();
 
         // loop through the rows
         for (int row = 156; row < 194; row++)
@@ -428,10 +339,8 @@ public class Picture extends SimplePicture
             // loop from 13 to just before the mirror point
             for (int col = 102; col < mirrorPoint; col++)
             {
-                leftPixel = pixels[row][col];      
-                rightPixel = pixels[row]                       
-                [mirrorPoint - col + mirrorPoint];
-                rightPixel.setColor(leftPixel.getColor());
+                this.setBasicPixel(mirrorPoint - col + mirrorPoint, row, 
+                    this.getBasicPixel(col, row));
             }
         }
     }
@@ -440,9 +349,6 @@ public class Picture extends SimplePicture
     public void mirrorGull()
     {
         int mirrorPoint = 360;
-        Pixel leftPixel = null;
-        Pixel rightPixel = null;
-        Pixel[][] pixels = this.getPixels2D();
 
         // loop through the rows
         for (int row = 225; row < 328; row++)
@@ -450,10 +356,8 @@ public class Picture extends SimplePicture
             // loop from 13 to just before the mirror point
             for (int col = 233; col < mirrorPoint; col++)
             {
-                leftPixel = pixels[row][col];      
-                rightPixel = pixels[row]                       
-                [mirrorPoint - col + mirrorPoint];
-                rightPixel.setColor(leftPixel.getColor());
+                this.setBasicPixel(mirrorPoint - col + mirrorPoint, row, 
+                    this.getBasicPixel(col, row));
             }
         }
 
@@ -469,52 +373,30 @@ public class Picture extends SimplePicture
     public void copy(Picture fromPic, 
     int startRow, int startCol)
     {
-        Pixel fromPixel = null;
-        Pixel toPixel = null;
-        Pixel[][] toPixels = this.getPixels2D();
-        Pixel[][] fromPixels = fromPic.getPixels2D();
-        for (int fromRow = 0, toRow = startRow; 
-        fromRow < fromPixels.length &&
-        toRow < toPixels.length; 
-        fromRow++, toRow++)
-        {
-            for (int fromCol = 0, toCol = startCol; 
-            fromCol < fromPixels[0].length &&
-            toCol < toPixels[0].length;  
-            fromCol++, toCol++)
-            {
-                fromPixel = fromPixels[fromRow][fromCol];
-                toPixel = toPixels[toRow][toCol];
-                toPixel.setColor(fromPixel.getColor());
-            }
-        }   
+        // copy whole rows at a time, clipped to this picture
+        this.copyRegion(fromPic, 0, 0, fromPic.getWidth(), 
+            fromPic.getHeight(), startCol, startRow);
     }
 
-    /** 
+    /** copy the rectangle from startSourceRow to endSourceRow
+     * and startSourceCol to endSourceCol (not including the ends)
+     * of the sourcePicture to startDestRow and startDestCol in the
+     * current picture
+     * @param sourcePicture the picture to copy from
+     * @param startSourceRow the first row to copy
+     * @param endSourceRow one past the last row to copy
+     * @param startSourceCol the first column to copy
+     * @param endSourceCol one past the last column to copy
+     * @param startDestRow the row to copy the first row to
+     * @param startDestCol the column to copy the first column to
      */
     public void cropAndCopy(Picture sourcePicture, int startSourceRow, int endSourceRow,
     int startSourceCol, int endSourceCol,int startDestRow, 
     int startDestCol)
     {
-        Pixel fromPixel = null;
-        Pixel toPixel = null;
-        Pixel[][] toPixels = this.getPixels2D();
-        Pixel[][] fromPixels = sourcePicture.getPixels2D();
-        for (int fromRow = startSourceRow, toRow = startDestRow; 
-        fromRow < endSourceRow &&
-        toRow < toPixels.length; 
-        fromRow++, toRow++)
-        {
-            for (int fromCol = startSourceCol, toCol = startDestCol; 
-            fromCol < endSourceCol &&
-            toCol < toPixels[0].length;  
-            fromCol++, toCol++)
-            {
-                fromPixel = fromPixels[fromRow][fromCol];
-                toPixel = toPixels[toRow][toCol];
-                toPixel.setColor(fromPixel.getColor());
-            }
-        }  
+        this.copyRegion(sourcePicture, startSourceCol, startSourceRow,
+            endSourceCol - startSourceCol, endSourceRow - startSourceRow,
+            startDestCol, startDestRow);
     }
 
     /** Method to create a collage of several pictures */
@@ -550,52 +432,220 @@ public class Picture extends SimplePicture
         this.write("forest collage.jpg");
     }
 
-    /** Method to show large changes in color 
+    /** Method to show large changes in color by comparing each 
+     * pixel to the pixel on its right (black for an edge, else white)
      * @param edgeDist the distance for finding edges
      */
     public void edgeDetection(int edgeDist)
     {
-        Pixel leftPixel = null;
-        Pixel rightPixel = null;
-        Pixel[][] pixels = this.getPixels2D();
-        Color rightColor = null;
-        for (int row = 0; row < pixels.length; row++)
-        {
-            for (int col = 0; 
-            col < pixels[0].length-1; col++)
-            {
-                leftPixel = pixels[row][col];
-                rightPixel = pixels[row][col+1];
-                rightColor = rightPixel.getColor();
-                if (leftPixel.colorDistance(rightColor) > 
-                edgeDist)
-                    leftPixel.setColor(Color.BLACK);
-                else
-                    leftPixel.setColor(Color.WHITE);
-            }
-        }
+        EdgeDetector.compareRight(this,edgeDist);
     }
     
-    /** scales a picture by 50% (width and height will halved)*/
-    public Pixel[][] scaleByHalf()
-    {
-        Pixel[][] pixels = this.getPixels2D();
-        int height = pixels.length;
-        int width = pixels[0].length;
-        int newHeight = height/2;
-        int newWidth = width/2;
-        Picture scaled = new Picture(newHeight,newWidth);
-        Pixel[][] scaledPic = scaled.getPixels2D();
-        for (int i = 0; i < height; i+=2)
-        {
-            for (int j = 0; j < width; j+=2)
-            {
-                scaledPic[i/2][j/2] = pixels[i][j];
-            }
-        }
-        
-        return scaledPic;
-
+    /** Method to find edges with the Canny edge detector (black for
+     * an edge, else white).  A black to white step has a gradient of
+     * about 1000.
+     * @param lowThreshold the weakest gradient that can be part of an edge
+     * @param highThreshold the weakest gradient that starts an edge
+     */
+    public void canny(int lowThreshold, int highThreshold)
+    {
+        EdgeDetector.canny(this,lowThreshold,highThreshold);
+    }
+    
+    /** Method to convolve this picture with a kernel, repeating the
+     * edge pixels past the edges
+     * @param kernel the kernel to convolve with
+     */
+    public void convolve(ConvolutionKernel kernel)
+    {
+        this.convolve(kernel,BorderMode.CLAMP);
+    }
+    
+    /** Method to convolve this picture with a kernel
+     * @param kernel the kernel to convolve with
+     * @param border how to get the pixels past the edges
+     */
+    public void convolve(ConvolutionKernel kernel, BorderMode border)
+    {
+        Convolution.convolve(this,kernel,border);
+    }
+    
+    /** Method to blur this picture with a gaussian kernel
+     * @param radius how many pixels away the blur reaches
+     */
+    public void blur(int radius)
+    {
+        if (radius <= 0)
+            return;
+        this.convolve(ConvolutionKernel.gaussian(radius / 3.0));
+    }
+    
+    /** Method to sharpen this picture */
+    public void sharpen()
+    {
+        this.convolve(ConvolutionKernel.sharpen());
+    }
+    
+    /** Method to replace each color with how strong the edges are
+     * in that color (using the Sobel kernels)
+     */
+    public void sobel()
+    {
+        Convolution.gradientMagnitude(this,ConvolutionKernel.sobelX(),
+                                      ConvolutionKernel.sobelY(),
+                                      BorderMode.CLAMP);
+    }
+    
+    /** Method to get the integral image of this picture.  The last 
+     * one is kept and only made again when the picture has changed.
+     * @return the integral image for the current pixels
+     */
+    public synchronized IntegralImage getIntegralImage()
+    {
+        if (integralImage == null || !integralImage.isCurrent())
+            integralImage = new IntegralImage(this);
+        return integralImage;
+    }
+    
+    /** Method to get the sums of the red, green, and blue values in a
+     * rectangle of this picture (parts outside the picture are skipped)
+     * @param x the x of the top left corner of the rectangle
+     * @param y the y of the top left corner of the rectangle
+     * @param width the width of the rectangle
+     * @param height the height of the rectangle
+     * @return an array with the red, green, and blue sums
+     */
+    public long[] regionSum(int x, int y, int width, int height)
+    {
+        return this.getIntegralImage().regionSum(x,y,width,height);
+    }
+    
+    /** Method to get the average red, green, and blue values in a
+     * rectangle of this picture (parts outside the picture are skipped)
+     * @param x the x of the top left corner of the rectangle
+     * @param y the y of the top left corner of the rectangle
+     * @param width the width of the rectangle
+     * @param height the height of the rectangle
+     * @return an array with the red, green, and blue averages
+     */
+    public double[] regionMean(int x, int y, int width, int height)
+    {
+        return this.getIntegralImage().regionMean(x,y,width,height);
+    }
+    
+    /** Method to blur this picture by setting each pixel to the average
+     * of the square around it.  It takes the same time for any radius.
+     * @param radius how many pixels the square reaches from its center
+     */
+    public void boxBlur(int radius)
+    {
+        if (radius <= 0)
+            return;
+        this.getIntegralImage().boxBlur(this,radius);
+    }
+    
+    /** Method to blur this picture with three box blurs that together
+     * look like a Gaussian blur.  It takes the same time for any sigma.
+     * @param sigma the standard deviation of the blur in pixels
+     */
+    public void gaussianBlur(double sigma)
+    {
+        BoxFilter.gaussianBlur(this,sigma);
+    }
+    
+    /** Method to sharpen this picture by unsharp masking
+     * @param radius the sigma of the blur in pixels (how wide the edges
+     * that get sharpened are)
+     * @param amount how much of the detail to add back (1.0 doubles it)
+     * @param threshold the smallest difference from the blurred color
+     * that is sharpened (0 to 255)
+     */
+    public void unsharpMask(double radius, double amount, int threshold)
+    {
+        UnsharpMask.unsharpMask(this,radius,amount,threshold);
+    }
+    
+    /** Method to increase the contrast between areas of this picture
+     * and their surroundings
+     * @param radius the sigma of the blur in pixels (usually large)
+     * @param amount how much to strengthen the difference
+     */
+    public void localContrast(double radius, double amount)
+    {
+        UnsharpMask.localContrast(this,radius,amount);
+    }
+    
+    /** Method to smooth this picture while keeping its edges sharp
+     * (a bilateral filter)
+     * @param spatialSigma how far (in pixels) the smoothing reaches
+     * @param rangeSigma how different in brightness (0 to 255) pixels 
+     * can be and still be averaged together
+     */
+    public void bilateralFilter(double spatialSigma, double rangeSigma)
+    {
+        BilateralFilter.filter(this,spatialSigma,rangeSigma);
+    }
+    
+    /** Method to erode this picture: each color becomes the smallest
+     * value in the rectangle around the pixel, so dark areas grow
+     * @param width the width of the rectangle (odd)
+     * @param height the height of the rectangle (odd)
+     */
+    public void erode(int width, int height)
+    {
+        Morphology.erode(this,width,height);
+    }
+    
+    /** Method to dilate this picture: each color becomes the largest
+     * value in the rectangle around the pixel, so light areas grow
+     * @param width the width of the rectangle (odd)
+     * @param height the height of the rectangle (odd)
+     */
+    public void dilate(int width, int height)
+    {
+        Morphology.dilate(this,width,height);
+    }
+    
+    /** Method to open this picture (erode then dilate), which removes
+     * light specks smaller than the rectangle
+     * @param width the width of the rectangle (odd)
+     * @param height the height of the rectangle (odd)
+     */
+    public void open(int width, int height)
+    {
+        Morphology.open(this,width,height);
+    }
+    
+    /** Method to close this picture (dilate then erode), which fills
+     * dark specks and gaps smaller than the rectangle
+     * @param width the width of the rectangle (odd)
+     * @param height the height of the rectangle (odd)
+     */
+    public void close(int width, int height)
+    {
+        Morphology.close(this,width,height);
+    }
+    
+    /** Method to remove salt-and-pepper noise by setting each color
+     * of each pixel to the median of that color in the square around
+     * it.  It takes about the same time for any radius.
+     * @param radius how many pixels the square reaches from its center
+     */
+    public void median(int radius)
+    {
+        MedianFilter.median(this,radius);
+    }
+    
+    /** Method to make a copy of this picture scaled by 50% (the width
+     * and height are halved), with each new pixel the average of the
+     * pixels it covers
+     * @return the smaller picture
+     */
+    public Picture scaleByHalf()
+    {
+        return Resampler.resize(this,Math.max(1,this.getWidth() / 2),
+                                Math.max(1,this.getHeight() / 2),
+                                Resampler.Filter.BOX);
     }
 
     /** Main method for testing - each class in Java can have a main method */
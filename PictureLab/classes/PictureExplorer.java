@@ -89,6 +89,9 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
   /** The image display */
   private ImageDisplay imageDisplay;
   
+  /** the picture and its smaller copies to draw the zoom levels from */
+  private PicturePyramid pyramid;
+  
   /** the zoom factor (amount to zoom) */
   private double zoomFactor;
   
@@ -189,6 +192,7 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
     scrollPane = new JScrollPane();
     
     BufferedImage bimg = picture.getBufferedImage();
+    pyramid = new PicturePyramid(picture);
     imageDisplay = new ImageDisplay(bimg);
     imageDisplay.addMouseMotionListener(this);
     imageDisplay.addMouseListener(this);
@@ -471,8 +475,9 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
   }
   
   /**
-   * Zooms in the on picture by scaling the image.  
-   * It is extremely memory intensive.
+   * Zooms in the on picture by scaling the image.  The image is drawn
+   * scaled from the closest level of the picture's pyramid that is at
+   * least as big, so only the first zoom out to a level makes it.
    * @param factor the amount to zoom by
    */
   public void zoom(double factor)
@@ -480,13 +485,8 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
     // save the current zoom factor
     zoomFactor = factor;
     
-    // calculate the new width and height and get an image that size
-    int width = (int) (picture.getWidth()*zoomFactor);
-    int height = (int) (picture.getHeight()*zoomFactor);
-    BufferedImage bimg = picture.getBufferedImage();
-    
-    // set the scroll image icon to the new image
-    imageDisplay.setImage(bimg.getScaledInstance(width, height, Image.SCALE_DEFAULT));
+    // set the scroll image to the pyramid level for the new size
+    showZoomedImage();
     imageDisplay.setCurrentX((int) (colIndex * zoomFactor));
     imageDisplay.setCurrentY((int) (rowIndex * zoomFactor));
     imageDisplay.revalidate();
@@ -494,10 +494,25 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
   }
   
   /**
-   * Repaints the image on the scrollpane.  
+   * Method to set the image display to the picture at the current zoom
+   */
+  private void showZoomedImage()
+  {
+    // calculate the new width and height and get the level to draw
+    int width = (int) (picture.getWidth()*zoomFactor);
+    int height = (int) (picture.getHeight()*zoomFactor);
+    BufferedImage bimg = pyramid.getImage(pyramid.getLevelFor(zoomFactor));
+    imageDisplay.setImage(bimg, width, height);
+  }
+  
+  /**
+   * Repaints the image on the scrollpane.  If the picture has changed
+   * the smaller levels are made again from the new pixels.
    */
   public void repaint()
   {
+    if (pyramid.refresh())
+      showZoomedImage();
     pictureFrame.repaint();
   }
   
@@ -0,0 +1,326 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Class for a chain of Picture operations that can be applied to a 
+ * picture (or to many pictures) in order.  Operations that only change
+ * each pixel based on that pixel (point operations like grayscale, 
+ * posterize, or negate) are fused together so that a run of them is done
+ * in one pass over the picture instead of one pass each.  Runs of lookup
+ * table operations are also combined into a single lookup table.  
+ * Operations that need the whole picture, like edgeDetection or the 
+ * mirror methods, are done by themselves and end the current run.
+ * 
+ * For example this does grayscale, posterize, and negate in one pass
+ * and then mirrors the picture:
+ * <pre>
+ *   PicturePipeline pipeline = new PicturePipeline().grayscale()
+ *     .posterize().negate().mirrorVertical();
+ *   pipeline.applyTo(picture);
+ * </pre>
+ */
+public class PicturePipeline
+{
+  
+  /**
+   * Class for one step in the pipeline.  Exactly one of the fields is
+   * set.
+   */
+  private static class Stage
+  {
+    /** the lookup table for a lookup table step */
+    private ChannelLut lut;
+    
+    /** the function for any other point operation */
+    private IntUnaryOperator point;
+    
+    /** the action for a step that needs the whole picture */
+    private Consumer<Picture> action;
+    
+    /**
+     * Method to check if this step only changes each pixel by itself
+     * @return true if it is a point operation else false
+     */
+    private boolean isPointOperation()
+    {
+      return action == null;
+    }
+    
+    /**
+     * Method to get this point operation as a function of a pixel value
+     * @return the function
+     */
+    private IntUnaryOperator asFunction()
+    {
+      if (lut != null)
+      {
+        ChannelLut table = lut;
+        return rgb -> table.apply(rgb);
+      }
+      return point;
+    }
+  }
+  
+  ////////////////////////// fields ///////////////////////////////////
+  
+  /** the steps in the order they were added */
+  private List<Stage> stages = new ArrayList<Stage>();
+  
+  /** the steps after fusing, or null if they need to be worked out */
+  private List<Stage> fusedStages;
+  
+  ///////////////////////// adding steps //////////////////////////////
+  
+  /**
+   * Method to add a step to the end of the pipeline
+   * @param stage the step to add
+   * @return this pipeline so calls can be chained
+   */
+  private synchronized PicturePipeline add(Stage stage)
+  {
+    stages.add(stage);
+    fusedStages = null;
+    return this;
+  }
+  
+  /**
+   * Method to add a lookup table step
+   * @param lut the lookup table to apply
+   * @return this pipeline so calls can be chained
+   */
+  public PicturePipeline lut(ChannelLut lut)
+  {
+    Stage stage = new Stage();
+    stage.lut = lut;
+    return add(stage);
+  }
+  
+  /**
+   * Method to add a point operation.  The function gets the old pixel 
+   * value (red, green, and blue in the lowest 24 bits) and returns the 
+   * new one, and must only depend on the value it is given.
+   * @param function the function to apply to each pixel value
+   * @return this pipeline so calls can be chained
+   */
+  public PicturePipeline point(IntUnaryOperator function)
+  {
+    Stage stage = new Stage();
+    stage.point = rgb -> function.applyAsInt(rgb) & 0xffffff;
+    return add(stage);
+  }
+  
+  /**
+   * Method to add a step that works on the whole picture.  This ends
+   * the current run of fused point operations.
+   * @param action the action to do to the picture
+   * @return this pipeline so calls can be chained
+   */
+  public PicturePipeline then(Consumer<Picture> action)
+  {
+    Stage stage = new Stage();
+    stage.action = action;
+    return add(stage);
+  }
+  
+  /**
+   * Method to add a grayscale step
+   * @return this pipeline so calls can be chained
+   */
+  public PicturePipeline grayscale()
+  {
+    return point(RasterKernels::grayscale);
+  }
+  
+  /**
+   * Method to add a sepia step
+   * @return this pipeline so calls can be chained
+   */
+  public PicturePipeline sepia()
+  {
+    return point(RasterKernels::sepia);
+  }
+  
+  /**
+   * Method to add a negate step
+   * @return this pipeline so calls can be chained
+   */
+  public PicturePipeline negate()
+  {
+    return lut(ChannelLut.negate());
+  }
+  
+  /**
+   * Method to add a step that sets the blue to 0
+   * @return this pipeline so calls can be chained
+   */
+  public PicturePipeline zeroBlue()
+  {
+    return lut(ChannelLut.zeroBlue());
+  }
+  
+  /**
+   * Method to add a step that sets the green to 0
+   * @return this pipeline so calls can be chained
+   */
+  public PicturePipeline zeroGreen()
+  {
+    return lut(ChannelLut.zeroGreen());
+  }
+  
+  /**
+   * Method to add a step that sets the red and green to 0
+   * @return this pipeline so calls can be chained
+   */
+  public PicturePipeline keepOnlyBlue()
+  {
+    return lut(ChannelLut.keepOnlyBlue());
+  }
+  
+  /**
+   * Method to add a posterize step
+   * @return this pipeline so calls can be chained
+   */
+  public PicturePipeline posterize()
+  {
+    return lut(ChannelLut.posterize(4));
+  }
+  
+  /**
+   * Method to add a fixUnderwater step
+   * @return this pipeline so calls can be chained
+   */
+  public PicturePipeline fixUnderwater()
+  {
+    return lut(ChannelLut.fixUnderwater());
+  }
+  
+  /**
+   * Method to add an edgeDetection step
+   * @param edgeDist the distance for finding edges
+   * @return this pipeline so calls can be chained
+   */
+  public PicturePipeline edgeDetection(int edgeDist)
+  {
+    return then(picture -> picture.edgeDetection(edgeDist));
+  }
+  
+  /**
+   * Method to add a mirrorVertical step
+   * @return this pipeline so calls can be chained
+   */
+  public PicturePipeline mirrorVertical()
+  {
+    return then(Picture::mirrorVertical);
+  }
+  
+  /**
+   * Method to add a mirrorVerticalRightToLeft step
+   * @return this pipeline so calls can be chained
+   */
+  public PicturePipeline mirrorVerticalRightToLeft()
+  {
+    return then(Picture::mirrorVerticalRightToLeft);
+  }
+  
+  /**
+   * Method to add a mirrorHorizontal step
+   * @return this pipeline so calls can be chained
+   */
+  public PicturePipeline mirrorHorizontal()
+  {
+    return then(Picture::mirrorHorizontal);
+  }
+  
+  /**
+   * Method to add a mirrorDiagonal step
+   * @return this pipeline so calls can be chained
+   */
+  public PicturePipeline mirrorDiagonal()
+  {
+    return then(Picture::mirrorDiagonal);
+  }
+  
+  ///////////////////////// running //////////////////////////////
+  
+  /**
+   * Method to get the steps after fusing.  Next to each other lookup
+   * tables are combined first, then runs of point operations are 
+   * combined into one function.
+   * @return the fused steps
+   */
+  private synchronized List<Stage> getFusedStages()
+  {
+    if (fusedStages != null)
+      return fusedStages;
+    
+    // combine lookup tables that are next to each other
+    List<Stage> combined = new ArrayList<Stage>();
+    for (Stage stage : stages)
+    {
+      Stage last = combined.isEmpty() ? null : combined.get(combined.size() - 1);
+      if (stage.lut != null && last != null && last.lut != null)
+      {
+        Stage both = new Stage();
+        both.lut = last.lut.andThen(stage.lut);
+        combined.set(combined.size() - 1,both);
+      }
+      else
+        combined.add(stage);
+    }
+    
+    // combine runs of point operations into one function
+    List<Stage> fused = new ArrayList<Stage>();
+    for (Stage stage : combined)
+    {
+      Stage last = fused.isEmpty() ? null : fused.get(fused.size() - 1);
+      if (stage.isPointOperation() && last != null && last.isPointOperation())
+      {
+        Stage both = new Stage();
+        both.point = last.asFunction().andThen(stage.asFunction());
+        fused.set(fused.size() - 1,both);
+      }
+      else
+        fused.add(stage);
+    }
+    fusedStages = fused;
+    return fusedStages;
+  }
+  
+  /**
+   * Method to get the number of passes over the picture this pipeline 
+   * makes after fusing (not counting passes made inside steps that 
+   * work on the whole picture)
+   * @return the number of steps after fusing
+   */
+  public int getPassCount()
+  {
+    return getFusedStages().size();
+  }
+  
+  /**
+   * Method to apply the pipeline to a picture
+   * @param picture the picture to change
+   */
+  public void applyTo(Picture picture)
+  {
+    for (Stage stage : getFusedStages())
+    {
+      if (stage.action != null)
+        stage.action.accept(picture);
+      else if (stage.lut != null)
+        picture.applyLut(stage.lut);
+      else
+      {
+        IntUnaryOperator function = stage.point;
+        picture.applyFilter((raster, start, end) -> 
+          {
+            for (int i = start; i < end; i++)
+              raster[i] = function.applyAsInt(raster[i]);
+          });
+      }
+    }
+  }
+  
+}
@@ -0,0 +1,145 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * Class for a mipmap pyramid of a picture: the picture itself (level 0)
+ * and copies of it shrunk to a half, a quarter, an eighth, and so on
+ * down to one pixel.  The picture explorer draws each zoom level from
+ * the closest level that is at least as big, so changing the zoom just
+ * scales an image that is already there instead of resizing the whole
+ * picture again.
+ *
+ * Levels are only made when they are first asked for, each from the
+ * level above it by averaging squares of pixels, so all of the smaller
+ * levels together use at most about a third of the memory the picture
+ * does.  The levels are thrown away when the picture has changed since
+ * they were made.  A simple picture's modification count tells when it
+ * has changed; any other kind of picture is taken to have changed every
+ * time the levels are refreshed.
+ */
+public class PicturePyramid
+{
+
+  /** the picture the levels are made from */
+  private final DigitalPicture picture;
+
+  /** the picture as a simple picture (made when first needed) */
+  private SimplePicture base;
+
+  /** the smaller levels, index 0 is level 1 (each made when needed) */
+  private final Picture[] levels;
+
+  /** the picture's modification count when the levels were made */
+  private int modificationCount;
+
+  /**
+   * Constructor that takes the picture
+   * @param picture the picture to make the levels from
+   */
+  public PicturePyramid(DigitalPicture picture)
+  {
+    this.picture = picture;
+    int count = 0;
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    while (width > 1 || height > 1)
+    {
+      width = Math.max(1,width / 2);
+      height = Math.max(1,height / 2);
+      count++;
+    }
+    levels = new Picture[count];
+    clear();
+  }
+
+  ///////////////////////// public methods //////////////////////////////
+
+  /**
+   * Method to get the number of levels, including the picture itself
+   * @return the number of levels
+   */
+  public int getLevelCount()
+  {
+    return levels.length + 1;
+  }
+
+  /**
+   * Method to get the smallest level that is at least as big as the
+   * picture zoomed by a factor
+   * @param zoom the zoom factor (1 is the picture's own size)
+   * @return the level (0 is the picture itself)
+   */
+  public int getLevelFor(double zoom)
+  {
+    int level = 0;
+    double scale = 0.5;
+    while (level < levels.length && zoom <= scale)
+    {
+      level++;
+      scale /= 2;
+    }
+    return level;
+  }
+
+  /**
+   * Method to get the image of a level, making it (and any bigger levels
+   * it is made from) if it isn't there yet
+   * @param level the level (0 is the picture itself)
+   * @return the image for that level
+   */
+  public BufferedImage getImage(int level)
+  {
+    if (level < 0 || level > levels.length)
+      throw new IllegalArgumentException("There is no level " + level);
+    if (level == 0)
+      return picture.getBufferedImage();
+    if (picture == base && base.getModificationCount() != modificationCount)
+      clear();
+
+    for (int i = 1; i <= level; i++)
+    {
+      if (levels[i - 1] == null)
+      {
+        if (base == null)
+          base = new SimplePicture(picture.getBufferedImage());
+        SimplePicture from = i == 1 ? base : levels[i - 2];
+        levels[i - 1] = Resampler.resize(from,Math.max(1,from.getWidth() / 2),
+                                         Math.max(1,from.getHeight() / 2),
+                                         Resampler.Filter.BOX);
+      }
+    }
+    return levels[level - 1].getBufferedImage();
+  }
+
+  /**
+   * Method to throw away the levels if the picture has changed since
+   * they were made
+   * @return true if the levels were thrown away
+   */
+  public boolean refresh()
+  {
+    if (picture instanceof SimplePicture &&
+        ((SimplePicture) picture).getModificationCount() == modificationCount)
+      return false;
+    clear();
+    return true;
+  }
+
+  ///////////////////////// helper methods //////////////////////////////
+
+  /**
+   * Method to throw away all of the smaller levels
+   */
+  private void clear()
+  {
+    for (int i = 0; i < levels.length; i++)
+      levels[i] = null;
+    if (picture instanceof SimplePicture)
+    {
+      base = (SimplePicture) picture;
+      modificationCount = base.getModificationCount();
+    }
+    else
+      base = null;
+  }
+
+}
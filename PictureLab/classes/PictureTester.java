@@ -107,6 +107,15 @@ public class PictureTester
     beach.explore();
   }
   
+  /** Method to test rotate90 */
+  public static void testRotate90()
+  {
+    Picture beach = new Picture("beach.jpg");
+    beach.explore();
+    Picture turned = beach.rotate90();
+    turned.explore();
+  }
+  
   /** Method to test mirrorTemple */
   public static void testMirrorTemple()
   {
@@ -161,12 +170,46 @@ public class PictureTester
     swan.explore();
   }
   
+  /** Method to test canny */
+  public static void testCanny()
+  {
+    Picture swan = new Picture("swan.jpg");
+    swan.canny(50,150);
+    swan.explore();
+  }
+  
+  /** Method to test median */
+  public static void testMedian()
+  {
+    Picture beach = new Picture("beach.jpg");
+    beach.explore();
+    beach.median(3);
+    beach.explore();
+  }
+  
+  /** Method to test blur */
+  public static void testBlur()
+  {
+    Picture swan = new Picture("swan.jpg");
+    swan.explore();
+    swan.blur(6);
+    swan.explore();
+  }
+  
   /** Method to test scaleByHalf */
   public static void testScaleByHalf()
   {
       Picture forest = new Picture("forest.jpg");
-      forest.scaleByHalf();
-      forest.explore();
+      Picture smaller = forest.scaleByHalf();
+      smaller.explore();
+  }
+    
+  /** Method to test a tiled picture */
+  public static void testTiledPicture()
+  {
+    TiledPicture beach = new TiledPicture("beach.jpg",1 << 20);
+    beach.forEachPixel(pixel -> pixel.setBlue(0));
+    beach.explore();
   }
     
   /** Main method for testing.  Every class can have a main
@@ -192,6 +235,7 @@ public class PictureTester
     testMirrorHorizontal();
     testMirrorHorizontalBotToTop();
     testMirrorDiagonal();
+    //testRotate90();
     testMirrorTemple();
     testMirrorArms();
     testMirrorGull();
@@ -200,6 +244,10 @@ public class PictureTester
     testScaleByHalf();
     //testEdgeDetection();
     //testEdgeDetection2();
+    //testCanny();
+    //testBlur();
+    //testMedian();
+    //testTiledPicture();
     //testChromakey();
     //testEncodeAndDecode();
     //testGetCountRedOverValue(250);
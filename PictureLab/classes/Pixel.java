@@ -61,6 +61,18 @@ public class Pixel
    */
   public int getY() { return y; }
   
+  /**
+   * Method to change the location this pixel refers to.  Only a 
+   * PixelCursor should move, every other pixel keeps its location.
+   * @param x the new x location of the pixel in the picture
+   * @param y the new y location of the pixel in the picture
+   */
+  void setLocation(int x, int y)
+  {
+    this.x = x;
+    this.y = y;
+  }
+  
   /** 
    * Method to get the row (y value)
    * @return the row (y value) of the pixel in the picture
@@ -94,6 +106,29 @@ public class Pixel
   }
     
   
+  /**
+   * Method to get the alpha value from a pixel represented as an int
+   * @param value the color value as an int
+   * @return the amount of alpha
+   */
+  public static int getAlpha(int value)
+  {
+    int alpha = (value >> 24) & 0xff;
+    return alpha;
+  }
+  
+  /**
+   * Method to get the whole color value at this pixel as one int with
+   * alpha, red, green, and blue each taking 8 bits from left to right.
+   * Reading this once and using the static getRed, getGreen, getBlue, and
+   * getAlpha methods on it only reads the picture one time.
+   * @return the color value as an int
+   */
+  public int getRGB()
+  {
+    return picture.getBasicPixel(x,y);
+  }
+  
   /**
    * Method to get the amount of red at this pixel.  It will be
    * from 0-255 with 0 being no red and 255 being as much red as
@@ -266,8 +301,10 @@ public class Pixel
     // set the red value to the corrected value
     int red = correctValue(value);
     
-    // update the pixel value in the picture
-    updatePicture(getAlpha(), red, getGreen(), getBlue());
+    // update the pixel value in the picture, reading the other
+    // values only once
+    int rgb = picture.getBasicPixel(x,y);
+    updatePicture(getAlpha(rgb), red, getGreen(rgb), getBlue(rgb));
   } 
   
   /**
@@ -279,8 +316,10 @@ public class Pixel
     // set the green value to the corrected value
     int green = correctValue(value);
     
-    // update the pixel value in the picture
-    updatePicture(getAlpha(), getRed(), green, getBlue());
+    // update the pixel value in the picture, reading the other
+    // values only once
+    int rgb = picture.getBasicPixel(x,y);
+    updatePicture(getAlpha(rgb), getRed(rgb), green, getBlue(rgb));
   } 
   
   /**
@@ -292,8 +331,10 @@ public class Pixel
     // set the blue value to the corrected value
     int blue = correctValue(value);
     
-    // update the pixel value in the picture
-    updatePicture(getAlpha(), getRed(), getGreen(), blue);
+    // update the pixel value in the picture, reading the other
+    // values only once
+    int rgb = picture.getBasicPixel(x,y);
+    updatePicture(getAlpha(rgb), getRed(rgb), getGreen(rgb), blue);
   } 
   
    /**
@@ -306,9 +347,39 @@ public class Pixel
     int alpha = correctValue(value);
     
     // update the associated picture
-    updatePicture(alpha, getRed(), getGreen(), getBlue());
+    int rgb = picture.getBasicPixel(x,y);
+    updatePicture(alpha, getRed(rgb), getGreen(rgb), getBlue(rgb));
   } 
   
+  /**
+   * Method to set the red, green, and blue values at once.  Each value
+   * is corrected to be within 0 to 255 and the picture is only read once
+   * (for the alpha) and written once.
+   * @param red the new red value
+   * @param green the new green value
+   * @param blue the new blue value
+   */
+  public void setRGB(int red, int green, int blue)
+  {
+    setARGB(getAlpha(picture.getBasicPixel(x,y)), red, green, blue);
+  }
+  
+  /**
+   * Method to set the alpha, red, green, and blue values at once.  Each
+   * value is corrected to be within 0 to 255 and the picture is written
+   * once without being read.  Use this with getRGB to change a pixel with
+   * just one read and one write.
+   * @param alpha the new alpha value
+   * @param red the new red value
+   * @param green the new green value
+   * @param blue the new blue value
+   */
+  public void setARGB(int alpha, int red, int green, int blue)
+  {
+    updatePicture(correctValue(alpha), correctValue(red),
+                  correctValue(green), correctValue(blue));
+  }
+  
   /**
   * Method to get the distance between this pixel's color and the passed color
   * @param testColor the color to compare to
@@ -325,6 +396,25 @@ public class Pixel
    return distance;
  }
  
+ /**
+  * Method to get the distance between this pixel's color and the color
+  * of another pixel without creating a Color object
+  * @param other the pixel to compare to
+  * @return the distance between the colors of the two pixels
+  */
+ public double colorDistance(Pixel other)
+ {
+   int value = picture.getBasicPixel(x,y);
+   int otherValue = other.picture.getBasicPixel(other.x,other.y);
+   double redDistance = getRed(value) - getRed(otherValue);
+   double greenDistance = getGreen(value) - getGreen(otherValue);
+   double blueDistance = getBlue(value) - getBlue(otherValue);
+   double distance = Math.sqrt(redDistance * redDistance + 
+                               greenDistance * greenDistance +
+                               blueDistance * blueDistance);
+   return distance;
+ }
+ 
  /**
   * Method to compute the color distances between two color objects
   * @param color1 a color object
@@ -0,0 +1,38 @@
+/**
+ * Class for a pixel that can be moved around a picture.  Instead of 
+ * creating a new Pixel object for every location (like getPixels2D does)
+ * one PixelCursor can be moved from location to location, so looping
+ * through a picture with it doesn't create any objects.  Since it is 
+ * reused, don't hold on to a cursor after you move it and expect it
+ * to still refer to the old location.
+ */
+public class PixelCursor extends Pixel
+{
+  
+  ////////////////////// constructors /////////////////////////////////
+  
+  /**
+   * A constructor that takes the picture to move around in.  The
+   * cursor starts at x = 0 and y = 0 (the top left).
+   * @param picture the picture that the cursor is in
+   */
+  public PixelCursor(DigitalPicture picture)
+  {
+    super(picture,0,0);
+  }
+  
+  ///////////////////////// methods //////////////////////////////
+  
+  /**
+   * Method to move the cursor to a new location in the picture
+   * @param x the new x (column) location
+   * @param y the new y (row) location
+   * @return this cursor so calls can be chained
+   */
+  public PixelCursor moveTo(int x, int y)
+  {
+    setLocation(x,y);
+    return this;
+  }
+  
+}
@@ -0,0 +1,229 @@
+/**
+ * Class with fast versions of the color filters in Picture that work
+ * right on the int array of a SimplePicture (see getRasterData).  Each
+ * pixel is an int with red, green, and blue taking 8 bits each, so 
+ * some filters can change all three colors with one bit operation.
+ * The loops are plain counted loops over the array with no method calls
+ * or object creation in them, which lets the JIT compiler turn them into
+ * SIMD (vector) instructions.  Every kernel gives exactly the same
+ * result as the Pixel based version of the filter, including the
+ * correction of values to be within 0 to 255.
+ */
+public class RasterKernels
+{
+  
+  /**
+   * Interface for a filter that changes a range of pixels in a raster
+   */
+  public interface Filter
+  {
+    /**
+     * Method to change the pixels from start up to (not including) end
+     * @param raster the pixels
+     * @param start the index of the first pixel to change
+     * @param end one past the index of the last pixel to change
+     */
+    public void apply(int[] raster, int start, int end);
+  }
+  
+  /** mask for the red, green, and blue bits of a pixel */
+  private static final int RGB_MASK = 0xffffff;
+  
+  ///////////////////////// per pixel methods //////////////////////////
+  
+  /**
+   * Method to divide a sum of three color values by 3.  It is the same as
+   * sum / 3 for any sum from 0 to 765 but uses a multiply and a shift
+   * since integer division can't be vectorized.
+   * @param sum the sum of three values from 0 to 255
+   * @return the sum divided by 3
+   */
+  public static int divideBy3(int sum)
+  {
+    return (sum * 0xAAAB) >>> 17;
+  }
+  
+  /**
+   * Method to negate a pixel value
+   * @param rgb the pixel value
+   * @return the negated pixel value
+   */
+  public static int negate(int rgb)
+  {
+    return ~rgb & RGB_MASK;
+  }
+  
+  /**
+   * Method to set the blue of a pixel value to 0
+   * @param rgb the pixel value
+   * @return the pixel value with no blue
+   */
+  public static int zeroBlue(int rgb)
+  {
+    return rgb & 0xffff00;
+  }
+  
+  /**
+   * Method to set the green of a pixel value to 0
+   * @param rgb the pixel value
+   * @return the pixel value with no green
+   */
+  public static int zeroGreen(int rgb)
+  {
+    return rgb & 0xff00ff;
+  }
+  
+  /**
+   * Method to set the red and green of a pixel value to 0
+   * @param rgb the pixel value
+   * @return the pixel value with only its blue
+   */
+  public static int keepOnlyBlue(int rgb)
+  {
+    return rgb & 0x0000ff;
+  }
+  
+  /**
+   * Method to set red, green, and blue of a pixel value to their average
+   * @param rgb the pixel value
+   * @return the gray pixel value
+   */
+  public static int grayscale(int rgb)
+  {
+    int avg = divideBy3(((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + 
+                        (rgb & 0xff));
+    return avg * 0x010101;
+  }
+  
+  /**
+   * Method to take 100 from the green and 90 from the blue of a pixel 
+   * value (stopping at 0)
+   * @param rgb the pixel value
+   * @return the pixel value with less green and blue
+   */
+  public static int fixUnderwater(int rgb)
+  {
+    int green = Math.max(((rgb >> 8) & 0xff) - 100, 0);
+    int blue = Math.max((rgb & 0xff) - 90, 0);
+    return (rgb & 0xff0000) | (green << 8) | blue;
+  }
+  
+  /**
+   * Method to apply the sepia filter to a pixel value.  Dark pixels get
+   * 9/10 of their original colors, the rest are gray with a blue of 8/10 
+   * (or 9/10 for light pixels) of the original red.  (int)(value * .9) is
+   * the same as value * 9 / 10 for values from 0 to 255.
+   * @param rgb the pixel value
+   * @return the sepia pixel value
+   */
+  public static int sepia(int rgb)
+  {
+    int red = (rgb >> 16) & 0xff;
+    int green = (rgb >> 8) & 0xff;
+    int blue = rgb & 0xff;
+    int avg = divideBy3(red + green + blue);
+    if (avg < 60)
+      return (red * 9 / 10 << 16) | (green * 9 / 10 << 8) | blue * 9 / 10;
+    else if (avg < 190)
+      return (avg << 16) | (avg << 8) | red * 8 / 10;
+    else
+      return (avg << 16) | (avg << 8) | red * 9 / 10;
+  }
+  
+  ///////////////////////// array methods //////////////////////////////
+  
+  /**
+   * Method to negate the pixels in part of a raster
+   * @param raster the pixels
+   * @param start the index of the first pixel to change
+   * @param end one past the index of the last pixel to change
+   */
+  public static void negate(int[] raster, int start, int end)
+  {
+    for (int i = start; i < end; i++)
+      raster[i] = ~raster[i] & RGB_MASK;
+  }
+  
+  /**
+   * Method to set the blue to 0 in part of a raster
+   * @param raster the pixels
+   * @param start the index of the first pixel to change
+   * @param end one past the index of the last pixel to change
+   */
+  public static void zeroBlue(int[] raster, int start, int end)
+  {
+    for (int i = start; i < end; i++)
+      raster[i] &= 0xffff00;
+  }
+  
+  /**
+   * Method to set the green to 0 in part of a raster
+   * @param raster the pixels
+   * @param start the index of the first pixel to change
+   * @param end one past the index of the last pixel to change
+   */
+  public static void zeroGreen(int[] raster, int start, int end)
+  {
+    for (int i = start; i < end; i++)
+      raster[i] &= 0xff00ff;
+  }
+  
+  /**
+   * Method to set the red and green to 0 in part of a raster
+   * @param raster the pixels
+   * @param start the index of the first pixel to change
+   * @param end one past the index of the last pixel to change
+   */
+  public static void keepOnlyBlue(int[] raster, int start, int end)
+  {
+    for (int i = start; i < end; i++)
+      raster[i] &= 0x0000ff;
+  }
+  
+  /**
+   * Method to grayscale part of a raster
+   * @param raster the pixels
+   * @param start the index of the first pixel to change
+   * @param end one past the index of the last pixel to change
+   */
+  public static void grayscale(int[] raster, int start, int end)
+  {
+    for (int i = start; i < end; i++)
+    {
+      int rgb = raster[i];
+      int sum = ((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff);
+      raster[i] = divideBy3(sum) * 0x010101;
+    }
+  }
+  
+  /**
+   * Method to take 100 from the green and 90 from the blue (stopping
+   * at 0) in part of a raster
+   * @param raster the pixels
+   * @param start the index of the first pixel to change
+   * @param end one past the index of the last pixel to change
+   */
+  public static void fixUnderwater(int[] raster, int start, int end)
+  {
+    for (int i = start; i < end; i++)
+    {
+      int rgb = raster[i];
+      int green = Math.max(((rgb >> 8) & 0xff) - 100, 0);
+      int blue = Math.max((rgb & 0xff) - 90, 0);
+      raster[i] = (rgb & 0xff0000) | (green << 8) | blue;
+    }
+  }
+  
+  /**
+   * Method to apply the sepia filter to part of a raster
+   * @param raster the pixels
+   * @param start the index of the first pixel to change
+   * @param end one past the index of the last pixel to change
+   */
+  public static void sepia(int[] raster, int start, int end)
+  {
+    for (int i = start; i < end; i++)
+      raster[i] = sepia(raster[i]);
+  }
+  
+}
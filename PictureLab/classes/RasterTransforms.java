@@ -0,0 +1,104 @@
+/**
+ * Class with cache friendly ways to move pixels around in a raster (the 
+ * int array of a SimplePicture, see getRasterData).  Turning rows into
+ * columns (a transpose) reads one array in order but writes the other a
+ * whole row apart each time, which is very slow on big pictures.  These 
+ * methods work on small square tiles instead, so both the tile being 
+ * read and the one being written stay in the cache.
+ */
+public class RasterTransforms
+{
+  
+  /** the width and height of a tile in pixels (64 x 64 ints is 16K) */
+  public static final int TILE_SIZE = 64;
+  
+  /**
+   * Method to copy some rows of a raster into another raster with the
+   * rows and columns swapped.  A pixel at x and y goes to column y and
+   * row x of the result, except that the result columns are reversed 
+   * if flipColumns is true and the result rows are reversed if flipRows
+   * is true.  With no flips this is a transpose, flipping the columns
+   * turns the picture 90 degrees to the right, and flipping the rows 
+   * turns it 90 degrees to the left.
+   * @param source the pixels to read
+   * @param width the width of the source
+   * @param height the height of the source (and the width of the result)
+   * @param result the pixels to write (width * height of them)
+   * @param startRow the first source row to copy
+   * @param endRow one past the last source row to copy
+   * @param flipColumns true to reverse the columns of the result
+   * @param flipRows true to reverse the rows of the result
+   */
+  public static void transpose(int[] source, int width, int height,
+                               int[] result, int startRow, int endRow,
+                               boolean flipColumns, boolean flipRows)
+  {
+    for (int tileRow = startRow; tileRow < endRow; tileRow += TILE_SIZE)
+    {
+      int rowEnd = Math.min(tileRow + TILE_SIZE,endRow);
+      for (int tileCol = 0; tileCol < width; tileCol += TILE_SIZE)
+      {
+        int colEnd = Math.min(tileCol + TILE_SIZE,width);
+        for (int row = tileRow; row < rowEnd; row++)
+        {
+          int resultCol = flipColumns ? height - 1 - row : row;
+          int sourceIndex = row * width;
+          for (int col = tileCol; col < colEnd; col++)
+          {
+            int resultRow = flipRows ? width - 1 - col : col;
+            result[resultRow * height + resultCol] = source[sourceIndex + col];
+          }
+        }
+      }
+    }
+  }
+  
+  /**
+   * Method to copy the pixels below the diagonal of the top left square
+   * of a raster to the pixels above it (what Picture.mirrorDiagonal does).
+   * Only pixels above the diagonal are written and only pixels below it 
+   * are read, so different rows can be done at the same time.
+   * @param raster the pixels
+   * @param width the width of the raster
+   * @param size the width and height of the square to mirror
+   * @param startRow the first row to write
+   * @param endRow one past the last row to write
+   */
+  public static void mirrorDiagonal(int[] raster, int width, int size,
+                                    int startRow, int endRow)
+  {
+    for (int tileRow = startRow; tileRow < endRow; tileRow += TILE_SIZE)
+    {
+      int rowEnd = Math.min(tileRow + TILE_SIZE,endRow);
+      
+      // only the tiles that reach above the diagonal need to be visited
+      for (int tileCol = tileRow - tileRow % TILE_SIZE; tileCol < size; 
+           tileCol += TILE_SIZE)
+      {
+        int colEnd = Math.min(tileCol + TILE_SIZE,size);
+        for (int row = tileRow; row < rowEnd; row++)
+        {
+          int rowIndex = row * width;
+          for (int col = Math.max(tileCol,row + 1); col < colEnd; col++)
+            raster[rowIndex + col] = raster[col * width + row];
+        }
+      }
+    }
+  }
+  
+  /**
+   * Method to copy some pixels of a raster into another one in reverse
+   * order, which turns the picture 180 degrees
+   * @param source the pixels to read
+   * @param result the pixels to write
+   * @param start the index of the first source pixel to copy
+   * @param end one past the index of the last source pixel to copy
+   */
+  public static void reverse(int[] source, int[] result, int start, int end)
+  {
+    int last = source.length - 1;
+    for (int i = start; i < end; i++)
+      result[last - i] = source[i];
+  }
+  
+}
@@ -0,0 +1,522 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Class to read and write pictures in a raw file format with no image
+ * codec, so handing a picture from one step of a pipeline to the next
+ * costs about as much as copying the pixels.  The file has the same
+ * header as a MappedPicture file, followed by the pixels either as they
+ * are (one little-endian 0xRRGGBB int per pixel, so the file can also be
+ * opened as a MappedPicture) or compressed.  The header has a CRC-32 of
+ * the pixel bytes, which is checked when the file is read.
+ *
+ * Plain files are read by mapping the pixels and copying them straight
+ * into the new picture's raster.  Compressed files hold blocks of up to
+ * BLOCK_BYTES pixel bytes, each compressed with a small LZ4-style
+ * method: runs of bytes that already appeared up to 64K bytes back are
+ * replaced by the distance and length of the earlier copy.  That is
+ * quick to undo and does well on flat areas and repeated patterns.
+ *
+ * SimplePicture reads and writes this format for files that end in
+ * EXTENSION (plain) or COMPRESSED_EXTENSION (compressed), and
+ * TiledPicture writes it a block at a time for pictures too big to copy
+ * into memory.
+ */
+public class RawPictureFile
+{
+
+  /** the extension of plain raw picture files */
+  public static final String EXTENSION = "plr";
+
+  /** the extension of compressed raw picture files */
+  public static final String COMPRESSED_EXTENSION = "plz";
+
+  /** the most pixel bytes in one compressed block */
+  public static final int BLOCK_BYTES = 1 << 22;
+
+  /** the most bytes mapped at a time when reading a plain file */
+  private static final int MAP_BYTES = 1 << 30;
+
+  /** the number of bits in the compressor's hash */
+  private static final int HASH_BITS = 16;
+
+  /** the farthest back a copy can be */
+  private static final int MAX_DISTANCE = 65535;
+
+  /** the shortest copy */
+  private static final int MIN_MATCH = 4;
+
+  /** the bytes at the end of a block that are always literal */
+  private static final int LAST_LITERALS = 5;
+
+  /** no copy can start in this many bytes before the end of a block */
+  private static final int MATCH_LIMIT = 12;
+
+  /**
+   * Interface for where the pixels of a picture being written come from,
+   * so a picture that isn't all in memory can be written a block at a
+   * time
+   */
+  interface PixelSource
+  {
+    /**
+     * Method to copy pixels in row-major order into an array
+     * @param start the index of the first pixel (y * width + x)
+     * @param pixels the array to copy into (starting at index 0)
+     * @param count the number of pixels to copy
+     */
+    public void getPixels(long start, int[] pixels, int count);
+  }
+
+  ///////////////////////// public methods //////////////////////////////
+
+  /**
+   * Method to check if an extension is one of the raw picture extensions
+   * @param extension the extension (without the dot)
+   * @return true if files with the extension are raw picture files
+   */
+  public static boolean isRawExtension(String extension)
+  {
+    return EXTENSION.equalsIgnoreCase(extension) ||
+      COMPRESSED_EXTENSION.equalsIgnoreCase(extension);
+  }
+
+  /**
+   * Method to read a raw picture file
+   * @param file the file to read
+   * @return a TYPE_INT_RGB buffered image with the pixels
+   * @throws IOException if the file can't be read, isn't a raw picture
+   * file, or doesn't match its checksum
+   */
+  public static BufferedImage read(File file) throws IOException
+  {
+    String name = file.getPath();
+    try (FileChannel in = FileChannel.open(file.toPath(),
+                                           StandardOpenOption.READ))
+    {
+      ByteBuffer header = ByteBuffer.allocate(MappedPicture.HEADER_SIZE);
+      header.order(ByteOrder.LITTLE_ENDIAN);
+      readFully(in,header,name);
+      MappedPicture.checkHeader(header,name);
+      int width = header.getInt(MappedPicture.HEADER_WIDTH);
+      int height = header.getInt(MappedPicture.HEADER_HEIGHT);
+      int flags = header.getInt(MappedPicture.HEADER_FLAGS);
+      if ((long) width * height > Integer.MAX_VALUE - 8)
+        throw new IOException(name + " is too big to read into memory; " +
+                              "open it as a MappedPicture instead");
+
+      BufferedImage image = new BufferedImage(width,height,
+                                              BufferedImage.TYPE_INT_RGB);
+      int[] raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+      CRC32 crc = new CRC32();
+      if ((flags & MappedPicture.FLAG_COMPRESSED) == 0)
+        readPlain(in,raster,crc,name);
+      else
+        readCompressed(in,raster,crc,name);
+
+      if ((flags & MappedPicture.FLAG_CHECKSUM) != 0 &&
+          (int) crc.getValue() != header.getInt(MappedPicture.HEADER_CHECKSUM))
+        throw new IOException(name + " doesn't match its checksum");
+      return image;
+    }
+  }
+
+  /**
+   * Method to write a picture to a raw picture file
+   * @param picture the picture to write
+   * @param file the file to write (any file with that name is replaced)
+   * @param compress true to compress the pixels
+   * @throws IOException if the file can't be written
+   */
+  public static void write(SimplePicture picture, File file, boolean compress)
+    throws IOException
+  {
+    int[] raster = picture.getRasterDataForReading();
+    write(picture.getWidth(),picture.getHeight(),(start, pixels, count) ->
+            System.arraycopy(raster,(int) start,pixels,0,count),
+          file,compress);
+  }
+
+  /**
+   * Method to write a raw picture file from pixels handed over a block
+   * at a time, so only one block has to be in memory
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @param source where the pixels come from
+   * @param file the file to write (any file with that name is replaced)
+   * @param compress true to compress the pixels
+   * @throws IOException if the file can't be written
+   */
+  static void write(int width, int height, PixelSource source, File file,
+                    boolean compress) throws IOException
+  {
+    long size = (long) width * height;
+    try (FileChannel out = FileChannel.open(file.toPath(),
+                                            StandardOpenOption.CREATE,
+                                            StandardOpenOption.WRITE,
+                                            StandardOpenOption.TRUNCATE_EXISTING))
+    {
+      CRC32 crc = new CRC32();
+      ByteBuffer block = ByteBuffer.allocate(BLOCK_BYTES);
+      block.order(ByteOrder.LITTLE_ENDIAN);
+      int[] pixels = new int[(int) Math.min(BLOCK_BYTES / 4,size)];
+      byte[] packed = compress ? new byte[maxCompressedLength(BLOCK_BYTES)] :
+        null;
+      ByteBuffer blockHeader = ByteBuffer.allocate(8);
+      blockHeader.order(ByteOrder.LITTLE_ENDIAN);
+      out.position(MappedPicture.HEADER_SIZE);
+
+      for (long start = 0; start < size; start += BLOCK_BYTES / 4)
+      {
+        int count = (int) Math.min(BLOCK_BYTES / 4,size - start);
+        int bytes = count * 4;
+        source.getPixels(start,pixels,count);
+        block.clear();
+        block.asIntBuffer().put(pixels,0,count);
+        crc.update(block.array(),0,bytes);
+        if (compress)
+        {
+          // a block that doesn't get smaller is stored as it is
+          int packedLength = compress(block.array(),bytes,packed);
+          boolean stored = packedLength >= bytes;
+          blockHeader.clear();
+          blockHeader.putInt(bytes);
+          blockHeader.putInt(stored ? bytes : packedLength);
+          blockHeader.flip();
+          writeFully(out,blockHeader);
+          writeFully(out,stored ? ByteBuffer.wrap(block.array(),0,bytes) :
+                     ByteBuffer.wrap(packed,0,packedLength));
+        }
+        else
+        {
+          block.limit(bytes);
+          writeFully(out,block);
+        }
+      }
+
+      int flags = MappedPicture.FLAG_CHECKSUM |
+        (compress ? MappedPicture.FLAG_COMPRESSED : 0);
+      ByteBuffer header = MappedPicture.makeHeader(width,height,flags,
+                                                   (int) crc.getValue());
+      out.position(0);
+      writeFully(out,header);
+    }
+  }
+
+  ///////////////////////// helper methods //////////////////////////////
+
+  /**
+   * Method to read the plain pixels of a file by mapping them a piece at
+   * a time and copying them into the raster
+   * @param in the file, just past the header
+   * @param raster the array to put the pixels in
+   * @param crc the checksum to add the pixel bytes to
+   * @param name the name of the file (for error messages)
+   * @throws IOException if the file is too short
+   */
+  private static void readPlain(FileChannel in, int[] raster, CRC32 crc,
+                                String name) throws IOException
+  {
+    if (in.size() < MappedPicture.HEADER_SIZE + 4L * raster.length)
+      throw new IOException(name + " is too short for its size");
+    for (int start = 0; start < raster.length; start += MAP_BYTES / 4)
+    {
+      int count = Math.min(MAP_BYTES / 4,raster.length - start);
+      MappedByteBuffer pixels =
+        in.map(FileChannel.MapMode.READ_ONLY,
+               MappedPicture.HEADER_SIZE + 4L * start,4L * count);
+      crc.update(pixels.duplicate());
+      pixels.order(ByteOrder.LITTLE_ENDIAN);
+      pixels.asIntBuffer().get(raster,start,count);
+    }
+  }
+
+  /**
+   * Method to read and uncompress the blocks of a compressed file into
+   * the raster
+   * @param in the file, just past the header
+   * @param raster the array to put the pixels in
+   * @param crc the checksum to add the pixel bytes to
+   * @param name the name of the file (for error messages)
+   * @throws IOException if the blocks are damaged
+   */
+  private static void readCompressed(FileChannel in, int[] raster, CRC32 crc,
+                                     String name) throws IOException
+  {
+    in.position(MappedPicture.HEADER_SIZE);
+    ByteBuffer blockHeader = ByteBuffer.allocate(8);
+    blockHeader.order(ByteOrder.LITTLE_ENDIAN);
+    byte[] block = new byte[BLOCK_BYTES];
+    byte[] packed = new byte[maxCompressedLength(BLOCK_BYTES)];
+    int start = 0;
+    while (start < raster.length)
+    {
+      blockHeader.clear();
+      readFully(in,blockHeader,name);
+      int bytes = blockHeader.getInt(0);
+      int packedLength = blockHeader.getInt(4);
+      if (bytes <= 0 || bytes > BLOCK_BYTES || bytes % 4 != 0 ||
+          bytes / 4 > raster.length - start || packedLength <= 0 ||
+          packedLength > packed.length)
+        throw new IOException(name + " has a damaged block");
+
+      if (packedLength == bytes)
+        readFully(in,ByteBuffer.wrap(block,0,bytes),name);
+      else
+      {
+        readFully(in,ByteBuffer.wrap(packed,0,packedLength),name);
+        uncompress(packed,packedLength,block,bytes,name);
+      }
+      crc.update(block,0,bytes);
+      ByteBuffer pixels = ByteBuffer.wrap(block,0,bytes);
+      pixels.order(ByteOrder.LITTLE_ENDIAN);
+      pixels.asIntBuffer().get(raster,start,bytes / 4);
+      start += bytes / 4;
+    }
+  }
+
+  /**
+   * Method to read from a channel until a buffer is full
+   * @param in the channel to read from
+   * @param buffer the buffer to fill
+   * @param name the name of the file (for the error message)
+   * @throws IOException if the file ends first
+   */
+  private static void readFully(FileChannel in, ByteBuffer buffer,
+                                String name) throws IOException
+  {
+    while (buffer.hasRemaining())
+      if (in.read(buffer) < 0)
+        throw new EOFException(name + " ends too soon");
+  }
+
+  /**
+   * Method to write all of a buffer to a channel
+   * @param out the channel to write to
+   * @param buffer the buffer to write
+   * @throws IOException if the buffer can't be written
+   */
+  private static void writeFully(FileChannel out, ByteBuffer buffer)
+    throws IOException
+  {
+    while (buffer.hasRemaining())
+      out.write(buffer);
+  }
+
+  /**
+   * Method to get the most bytes a block can compress to
+   * @param length the length of the block
+   * @return the longest the compressed block can be
+   */
+  private static int maxCompressedLength(int length)
+  {
+    return length + length / 255 + 16;
+  }
+
+  /**
+   * Method to get the little-endian int at a position in an array
+   * @param bytes the array
+   * @param i the position of the first byte
+   * @return the int
+   */
+  private static int intAt(byte[] bytes, int i)
+  {
+    return (bytes[i] & 0xff) | (bytes[i + 1] & 0xff) << 8 |
+      (bytes[i + 2] & 0xff) << 16 | (bytes[i + 3] & 0xff) << 24;
+  }
+
+  /**
+   * Method to compress a block.  The output is a list of sequences, each
+   * a token byte (literal count in the top 4 bits, copy length - 4 in
+   * the bottom 4, with 15 meaning more count bytes follow), the literal
+   * bytes, and then the two byte distance back to the copy.  The last
+   * sequence is only literals.
+   * @param source the bytes to compress
+   * @param length the number of bytes to compress
+   * @param result the array to put the compressed bytes in (at least
+   * maxCompressedLength(length) long)
+   * @return the number of compressed bytes
+   */
+  private static int compress(byte[] source, int length, byte[] result)
+  {
+    int[] table = new int[1 << HASH_BITS];
+    Arrays.fill(table,-1);
+    int anchor = 0;
+    int in = 0;
+    int out = 0;
+    int misses = 0;
+    int matchEnd = length - LAST_LITERALS;
+    while (in < length - MATCH_LIMIT)
+    {
+      int sequence = intAt(source,in);
+      int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+      int match = table[hash];
+      table[hash] = in;
+      if (match < 0 || in - match > MAX_DISTANCE ||
+          intAt(source,match) != sequence)
+      {
+        // step faster through bytes that don't repeat
+        in += 1 + (misses++ >> 6);
+        continue;
+      }
+      misses = 0;
+
+      // make the copy as long as possible in both directions
+      while (in > anchor && match > 0 && source[in - 1] == source[match - 1])
+      {
+        in--;
+        match--;
+      }
+      int matchLength = MIN_MATCH;
+      while (in + matchLength < matchEnd &&
+             source[in + matchLength] == source[match + matchLength])
+        matchLength++;
+
+      out = writeSequence(source,anchor,in - anchor,in - match,matchLength,
+                          result,out);
+      in += matchLength;
+      anchor = in;
+    }
+    return writeSequence(source,anchor,length - anchor,0,0,result,out);
+  }
+
+  /**
+   * Method to write one sequence of the compressed form
+   * @param source the bytes being compressed
+   * @param literalStart where the literal bytes start
+   * @param literals the number of literal bytes
+   * @param distance how far back the copy is (unused for the last one)
+   * @param matchLength the length of the copy (0 for the last sequence)
+   * @param result the array to put the compressed bytes in
+   * @param out where to put the sequence
+   * @return where the next sequence goes
+   */
+  private static int writeSequence(byte[] source, int literalStart,
+                                   int literals, int distance,
+                                   int matchLength, byte[] result, int out)
+  {
+    int extra = matchLength - MIN_MATCH;
+    int token = Math.min(literals,15) << 4 |
+      (matchLength == 0 ? 0 : Math.min(extra,15));
+    result[out++] = (byte) token;
+    out = writeCount(literals,result,out);
+    System.arraycopy(source,literalStart,result,out,literals);
+    out += literals;
+    if (matchLength > 0)
+    {
+      result[out++] = (byte) distance;
+      result[out++] = (byte) (distance >> 8);
+      out = writeCount(extra,result,out);
+    }
+    return out;
+  }
+
+  /**
+   * Method to write the extra bytes of a count that is 15 or more
+   * @param count the count
+   * @param result the array to put the bytes in
+   * @param out where to put them
+   * @return where the next byte goes
+   */
+  private static int writeCount(int count, byte[] result, int out)
+  {
+    if (count < 15)
+      return out;
+    count -= 15;
+    while (count >= 255)
+    {
+      result[out++] = (byte) 255;
+      count -= 255;
+    }
+    result[out++] = (byte) count;
+    return out;
+  }
+
+  /**
+   * Method to uncompress a block
+   * @param source the compressed bytes
+   * @param length the number of compressed bytes
+   * @param result the array to put the bytes in
+   * @param resultLength the number of bytes the block should have
+   * @param name the name of the file (for the error message)
+   * @throws IOException if the compressed bytes are damaged
+   */
+  private static void uncompress(byte[] source, int length, byte[] result,
+                                 int resultLength, String name)
+    throws IOException
+  {
+    int in = 0;
+    int out = 0;
+    try
+    {
+      while (true)
+      {
+        int token = source[in++] & 0xff;
+        int literals = token >>> 4;
+        if (literals == 15)
+        {
+          int more;
+          do
+          {
+            more = source[in++] & 0xff;
+            literals += more;
+          } while (more == 255);
+        }
+        if (literals > length - in || literals > resultLength - out)
+          break;
+        System.arraycopy(source,in,result,out,literals);
+        in += literals;
+        out += literals;
+        if (in == length)
+        {
+          if (out == resultLength)
+            return;
+          break;
+        }
+
+        int distance = (source[in] & 0xff) | (source[in + 1] & 0xff) << 8;
+        in += 2;
+        int matchLength = token & 15;
+        if (matchLength == 15)
+        {
+          int more;
+          do
+          {
+            more = source[in++] & 0xff;
+            matchLength += more;
+          } while (more == 255);
+        }
+        matchLength += MIN_MATCH;
+        int match = out - distance;
+        if (distance == 0 || match < 0 || matchLength > resultLength - out)
+          break;
+
+        // a copy may overlap the bytes it makes; the bytes repeat every
+        // distance, so copy as much as is already there each time
+        int end = out + matchLength;
+        while (out < end)
+        {
+          int count = Math.min(out - match,end - out);
+          System.arraycopy(result,match,result,out,count);
+          out += count;
+        }
+      }
+    }
+    catch (ArrayIndexOutOfBoundsException ex)
+    {
+      // fall through to the error below
+    }
+    throw new IOException(name + " has a damaged compressed block");
+  }
+
+}
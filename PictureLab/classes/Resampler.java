@@ -0,0 +1,405 @@
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Class that resizes pictures.  A new pixel is a weighted average of the
+ * old pixels near where it lands, with the weights given by a filter:
+ * box (area average), bilinear, bicubic, or Lanczos.  When shrinking, the
+ * filter is stretched to cover all the old pixels that fall under the
+ * new one so nothing is skipped (which is what makes nearest-neighbor
+ * shrinking look jagged).
+ *
+ * The filter is separable, so the weights for each new column and each
+ * new row are worked out once into integer tables, and the picture is
+ * resized along the rows and then down the columns.  Both passes are
+ * done in parallel bands of rows when the source picture is in parallel
+ * mode.  Shrinking to exactly half with the box filter just averages
+ * each 2 by 2 square of pixels.
+ */
+public class Resampler
+{
+
+  /**
+   * Filters for the weights of the old pixels.  Each has a support: how
+   * far from the center (in old pixels, before stretching) it reaches.
+   */
+  public enum Filter
+  {
+    /** the average of the pixels under the new pixel */
+    BOX(0.5)
+    {
+      double weight(double x)
+      {
+        return x >= -0.5 && x < 0.5 ? 1 : 0;
+      }
+    },
+
+    /** straight-line (triangle) weights */
+    BILINEAR(1)
+    {
+      double weight(double x)
+      {
+        x = Math.abs(x);
+        return x < 1 ? 1 - x : 0;
+      }
+    },
+
+    /** Keys cubic weights (a = -0.5), sharper than bilinear */
+    BICUBIC(2)
+    {
+      double weight(double x)
+      {
+        double a = -0.5;
+        x = Math.abs(x);
+        if (x < 1)
+          return ((a + 2) * x - (a + 3)) * x * x + 1;
+        if (x < 2)
+          return (((x - 5) * x + 8) * x - 4) * a;
+        return 0;
+      }
+    },
+
+    /** Lanczos weights with 3 lobes, the sharpest */
+    LANCZOS(3)
+    {
+      double weight(double x)
+      {
+        if (x <= -3 || x >= 3)
+          return 0;
+        return sinc(x) * sinc(x / 3);
+      }
+    };
+
+    /** how far the filter reaches from its center */
+    private final double support;
+
+    /**
+     * Constructor that takes the support
+     * @param support how far the filter reaches from its center
+     */
+    private Filter(double support)
+    {
+      this.support = support;
+    }
+
+    /**
+     * Method to get how far the filter reaches from its center
+     * @return the support in old pixels
+     */
+    public double getSupport()
+    {
+      return support;
+    }
+
+    /**
+     * Method to get the weight at a distance from the center
+     * @param x the distance (in old pixels, before stretching)
+     * @return the weight
+     */
+    abstract double weight(double x);
+
+    /**
+     * Method to get sin(pi x) / (pi x)
+     * @param x the value
+     * @return the sinc of x
+     */
+    private static double sinc(double x)
+    {
+      if (x == 0)
+        return 1;
+      x *= Math.PI;
+      return Math.sin(x) / x;
+    }
+  }
+
+  /** the number of fraction bits in the integer weights */
+  private static final int WEIGHT_BITS = 16;
+
+  ///////////////////////// public methods //////////////////////////////
+
+  /**
+   * Method to make a resized copy of a picture
+   * @param source the picture to resize
+   * @param width the width of the new picture
+   * @param height the height of the new picture
+   * @param filter the filter to use
+   * @return the new picture
+   */
+  public static Picture resize(SimplePicture source, int width, int height,
+                               Filter filter)
+  {
+    if (width <= 0 || height <= 0)
+      throw new IllegalArgumentException(
+        "The new width and height must be more than 0");
+    // a new image starts black, so there is no fill before every pixel
+    // is set
+    Picture result = new Picture(new BufferedImage(width,height,
+                                                   BufferedImage.TYPE_INT_RGB));
+    resize(source,result,filter);
+    return result;
+  }
+
+  /**
+   * Method to resize a picture into another picture (of the new size)
+   * @param source the picture to resize
+   * @param result the picture to put the resized pixels in
+   * @param filter the filter to use
+   */
+  public static void resize(SimplePicture source, SimplePicture result,
+                            Filter filter)
+  {
+    int sourceWidth = source.getWidth();
+    int sourceHeight = source.getHeight();
+    int width = result.getWidth();
+    int height = result.getHeight();
+    int[] from = source.getRasterDataForReading();
+    int[] to = result.getRasterData();
+    if (width == sourceWidth && height == sourceHeight)
+    {
+      System.arraycopy(from,0,to,0,width * height);
+      return;
+    }
+    if (filter == Filter.BOX && width * 2 == sourceWidth &&
+        height * 2 == sourceHeight)
+    {
+      halve(source,to,width,height);
+      return;
+    }
+
+    Weights across = width == sourceWidth ? null :
+      new Weights(sourceWidth,width,filter);
+    Weights down = height == sourceHeight ? null :
+      new Weights(sourceHeight,height,filter);
+    if (down == null)
+    {
+      source.forEachRowBand((startRow, endRow) ->
+        resizeRows(from,to,sourceWidth,width,across,startRow,endRow));
+    }
+    else if (across == null)
+    {
+      source.forEachRowBand(0,height,(startRow, endRow) ->
+        resizeColumns(from,to,width,down,startRow,endRow));
+    }
+    else
+    {
+      int[] temp = ScratchPool.acquire(width * sourceHeight);
+      try
+      {
+        source.forEachRowBand((startRow, endRow) ->
+          resizeRows(from,temp,sourceWidth,width,across,startRow,endRow));
+        source.forEachRowBand(0,height,(startRow, endRow) ->
+          resizeColumns(temp,to,width,down,startRow,endRow));
+      }
+      finally
+      {
+        ScratchPool.release(temp);
+      }
+    }
+  }
+
+  ///////////////////////// helper methods //////////////////////////////
+
+  /**
+   * Class for the weights of one direction: for each new position, the
+   * first old position it uses, how many it uses, and their weights
+   */
+  private static class Weights
+  {
+    /** the first old position for each new position */
+    private final int[] start;
+
+    /** the number of old positions for each new position */
+    private final int[] count;
+
+    /** the integer weights, stride for each new position */
+    private final int[] weights;
+
+    /** the most weights any new position uses */
+    private final int stride;
+
+    /**
+     * Constructor that works out the weights
+     * @param oldSize the number of old positions
+     * @param newSize the number of new positions
+     * @param filter the filter to use
+     */
+    private Weights(int oldSize, int newSize, Filter filter)
+    {
+      double scale = (double) oldSize / newSize;
+      double stretch = Math.max(scale,1);
+      double support = filter.getSupport() * stretch;
+      stride = (int) Math.ceil(support) * 2 + 1;
+      start = new int[newSize];
+      count = new int[newSize];
+      weights = new int[newSize * stride];
+      double[] exact = new double[stride];
+      for (int i = 0; i < newSize; i++)
+      {
+        double center = (i + 0.5) * scale;
+        int first = Math.max((int) Math.floor(center - support),0);
+        int last = Math.min((int) Math.ceil(center + support),oldSize);
+        int n = Math.min(last - first,stride);
+        double total = 0;
+        for (int k = 0; k < n; k++)
+        {
+          exact[k] = filter.weight((first + k + 0.5 - center) / stretch);
+          total += exact[k];
+        }
+
+        // use the closest old pixel if no weight landed on a pixel
+        if (total == 0)
+        {
+          first = Math.min((int) center,oldSize - 1);
+          n = 1;
+          exact[0] = total = 1;
+        }
+        start[i] = first;
+        count[i] = n;
+        for (int k = 0; k < n; k++)
+          weights[i * stride + k] =
+            (int) Math.round(exact[k] / total * (1 << WEIGHT_BITS));
+      }
+    }
+  }
+
+  /**
+   * Method to limit a fixed-point color sum to 0 to 255
+   * @param sum the sum with WEIGHT_BITS fraction bits (already rounded)
+   * @return the color from 0 to 255
+   */
+  private static int toColor(int sum)
+  {
+    return Convolution.clamp(sum >> WEIGHT_BITS);
+  }
+
+  /**
+   * Method to resize rows to a new width
+   * @param from the pixels to read
+   * @param to the array to put the new rows in
+   * @param oldWidth the width of the old rows
+   * @param newWidth the width of the new rows
+   * @param across the weights for the new columns
+   * @param startRow the first row to do
+   * @param endRow one past the last row to do
+   */
+  private static void resizeRows(int[] from, int[] to, int oldWidth,
+                                 int newWidth, Weights across,
+                                 int startRow, int endRow)
+  {
+    int half = 1 << (WEIGHT_BITS - 1);
+    for (int y = startRow; y < endRow; y++)
+    {
+      int oldRow = y * oldWidth;
+      int newRow = y * newWidth;
+      for (int x = 0; x < newWidth; x++)
+      {
+        int red = half;
+        int green = half;
+        int blue = half;
+        int first = oldRow + across.start[x];
+        int w = x * across.stride;
+        for (int k = 0; k < across.count[x]; k++)
+        {
+          int rgb = from[first + k];
+          int weight = across.weights[w + k];
+          red += ((rgb >> 16) & 0xff) * weight;
+          green += ((rgb >> 8) & 0xff) * weight;
+          blue += (rgb & 0xff) * weight;
+        }
+        to[newRow + x] = (toColor(red) << 16) | (toColor(green) << 8) |
+          toColor(blue);
+      }
+    }
+  }
+
+  /**
+   * Method to resize columns to a new height.  Each new row is made from
+   * whole old rows so the arrays are read a row at a time.
+   * @param from the pixels to read
+   * @param to the array to put the new rows in
+   * @param width the width of the rows
+   * @param down the weights for the new rows
+   * @param startRow the first new row to do
+   * @param endRow one past the last new row to do
+   */
+  private static void resizeColumns(int[] from, int[] to, int width,
+                                    Weights down, int startRow, int endRow)
+  {
+    int half = 1 << (WEIGHT_BITS - 1);
+    int[] red = ScratchPool.acquire(width);
+    int[] green = ScratchPool.acquire(width);
+    int[] blue = ScratchPool.acquire(width);
+    try
+    {
+      for (int y = startRow; y < endRow; y++)
+      {
+        Arrays.fill(red,0,width,half);
+        Arrays.fill(green,0,width,half);
+        Arrays.fill(blue,0,width,half);
+        int w = y * down.stride;
+        for (int k = 0; k < down.count[y]; k++)
+        {
+          int oldRow = (down.start[y] + k) * width;
+          int weight = down.weights[w + k];
+          for (int x = 0; x < width; x++)
+          {
+            int rgb = from[oldRow + x];
+            red[x] += ((rgb >> 16) & 0xff) * weight;
+            green[x] += ((rgb >> 8) & 0xff) * weight;
+            blue[x] += (rgb & 0xff) * weight;
+          }
+        }
+        int newRow = y * width;
+        for (int x = 0; x < width; x++)
+          to[newRow + x] = (toColor(red[x]) << 16) |
+            (toColor(green[x]) << 8) | toColor(blue[x]);
+      }
+    }
+    finally
+    {
+      ScratchPool.release(red);
+      ScratchPool.release(green);
+      ScratchPool.release(blue);
+    }
+  }
+
+  /**
+   * Method to shrink a picture to exactly half its width and height by
+   * averaging each 2 by 2 square.  Red and blue are added together in
+   * one int (they are 16 bits apart so the sums can't run into each
+   * other) and green in another.
+   * @param source the picture to shrink (even width and height)
+   * @param to the array to put the new pixels in
+   * @param width the new width
+   * @param height the new height
+   */
+  private static void halve(SimplePicture source, int[] to, int width,
+                            int height)
+  {
+    int[] from = source.getRasterDataForReading();
+    int oldWidth = width * 2;
+    source.forEachRowBand(0,height,(startRow, endRow) ->
+      {
+        for (int y = startRow; y < endRow; y++)
+        {
+          int top = 2 * y * oldWidth;
+          int bottom = top + oldWidth;
+          int newRow = y * width;
+          for (int x = 0; x < width; x++)
+          {
+            int a = from[top + 2 * x];
+            int b = from[top + 2 * x + 1];
+            int c = from[bottom + 2 * x];
+            int d = from[bottom + 2 * x + 1];
+            int redBlue = (a & 0xff00ff) + (b & 0xff00ff) + (c & 0xff00ff) +
+              (d & 0xff00ff) + 0x020002;
+            int green = (a & 0xff00) + (b & 0xff00) + (c & 0xff00) +
+              (d & 0xff00) + 0x200;
+            to[newRow + x] = ((redBlue >> 2) & 0xff00ff) |
+              ((green >> 2) & 0xff00);
+          }
+        }
+      });
+  }
+
+}
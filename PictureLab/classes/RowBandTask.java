@@ -0,0 +1,102 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class for a fork/join task that works on a range of rows of a picture.
+ * If the range is big enough it is split in half and both halves are run
+ * in parallel, otherwise the work is done right away on the whole range.
+ * Each band of rows is handed to a BandAction, so the action must only
+ * change pixels in the rows it is given.
+ */
+public class RowBandTask extends RecursiveAction
+{
+  
+  /**
+   * Interface for the work to do on one band of rows
+   */
+  public interface BandAction
+  {
+    /**
+     * Method to do the work on a band of rows
+     * @param startRow the first row in the band
+     * @param endRow one past the last row in the band
+     */
+    public void apply(int startRow, int endRow);
+  }
+  
+  ////////////////////////// fields ///////////////////////////////////
+  
+  /** the version of this class for serialization */
+  private static final long serialVersionUID = 1L;
+  
+  /** the work to do on each band */
+  private BandAction action;
+  
+  /** the first row this task works on */
+  private int startRow;
+  
+  /** one past the last row this task works on */
+  private int endRow;
+  
+  /** the smallest number of rows to give a task */
+  private int minBandRows;
+  
+  ////////////////////// constructors /////////////////////////////////
+  
+  /**
+   * Constructor that takes the action and the rows to work on
+   * @param action the work to do on each band
+   * @param startRow the first row to work on
+   * @param endRow one past the last row to work on
+   * @param minBandRows the smallest band worth splitting off
+   */
+  public RowBandTask(BandAction action, int startRow, int endRow, 
+                     int minBandRows)
+  {
+    this.action = action;
+    this.startRow = startRow;
+    this.endRow = endRow;
+    this.minBandRows = Math.max(1,minBandRows);
+  }
+  
+  ///////////////////////// methods //////////////////////////////
+  
+  /**
+   * Method to do the work, splitting the rows in half while both 
+   * halves are at least the minimum band size
+   */
+  protected void compute()
+  {
+    int rows = endRow - startRow;
+    if (rows < 2 * minBandRows)
+    {
+      action.apply(startRow,endRow);
+    }
+    else
+    {
+      int middle = startRow + rows / 2;
+      invokeAll(new RowBandTask(action,startRow,middle,minBandRows),
+                new RowBandTask(action,middle,endRow,minBandRows));
+    }
+  }
+  
+  /**
+   * Method to run an action over a range of rows.  If there is no pool or
+   * the range is too small to split, the action is run once on the whole 
+   * range in the current thread, otherwise it is run in bands on the pool.
+   * @param pool the pool to run on (may be null)
+   * @param startRow the first row to work on
+   * @param endRow one past the last row to work on
+   * @param minBandRows the smallest band worth splitting off
+   * @param action the work to do on each band
+   */
+  public static void run(ForkJoinPool pool, int startRow, int endRow,
+                         int minBandRows, BandAction action)
+  {
+    if (pool == null || endRow - startRow < 2 * Math.max(1,minBandRows))
+      action.apply(startRow,endRow);
+    else
+      pool.invoke(new RowBandTask(action,startRow,endRow,minBandRows));
+  }
+  
+}
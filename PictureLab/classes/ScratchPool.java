@@ -0,0 +1,146 @@
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class that keeps int arrays (and double arrays, for the FFT) around
+ * after a filter is done with them so the next filter can use them
+ * again instead of creating new ones.
+ * Big filters like convolutions need extra arrays as large as the 
+ * picture, and creating those over and over is slow and makes the 
+ * garbage collector work hard.  The arrays are only held by soft 
+ * references, so the garbage collector can still take them back if
+ * memory runs low.
+ * 
+ * An array from acquire can be longer than asked for and still has 
+ * whatever values were left in it, so don't depend on its length or 
+ * its contents.  Give it back with release (or releaseDoubles) when you
+ * are done with it and don't use it after that.
+ */
+public class ScratchPool
+{
+  
+  /** the most arrays to keep in the pool */
+  public static final int MAX_POOLED = 16;
+  
+  /** the int arrays that aren't being used right now */
+  private static final List<SoftReference<Object>> pool = 
+    new ArrayList<SoftReference<Object>>();
+  
+  /** the double arrays that aren't being used right now */
+  private static final List<SoftReference<Object>> doublePool = 
+    new ArrayList<SoftReference<Object>>();
+  
+  /**
+   * Method to get an array with at least the passed length, using the
+   * shortest pooled array that is long enough if there is one
+   * @param size the smallest length needed
+   * @return an array with at least that length
+   */
+  public static int[] acquire(int size)
+  {
+    int[] array = (int[]) take(pool,size);
+    return array != null ? array : new int[size];
+  }
+  
+  /**
+   * Method to give an array back to the pool.  If the pool is full the
+   * shortest array in it is dropped to make room.
+   * @param array the array that is no longer needed (may be null)
+   */
+  public static void release(int[] array)
+  {
+    give(pool,array);
+  }
+  
+  /**
+   * Method to get a double array with at least the passed length, using
+   * the shortest pooled double array that is long enough if there is one
+   * @param size the smallest length needed
+   * @return an array with at least that length
+   */
+  public static double[] acquireDoubles(int size)
+  {
+    double[] array = (double[]) take(doublePool,size);
+    return array != null ? array : new double[size];
+  }
+  
+  /**
+   * Method to give a double array back to the pool
+   * @param array the array that is no longer needed (may be null)
+   */
+  public static void releaseDoubles(double[] array)
+  {
+    give(doublePool,array);
+  }
+  
+  /**
+   * Method to take the shortest array that is long enough out of a pool
+   * @param arrays the pool
+   * @param size the smallest length needed
+   * @return the array or null if none is long enough
+   */
+  private static Object take(List<SoftReference<Object>> arrays, int size)
+  {
+    synchronized (arrays)
+    {
+      int bestIndex = -1;
+      Object best = null;
+      for (int i = arrays.size() - 1; i >= 0; i--)
+      {
+        Object array = arrays.get(i).get();
+        if (array == null)
+          arrays.remove(i);
+        else if (Array.getLength(array) >= size && 
+                 (best == null || Array.getLength(array) < Array.getLength(best)))
+        {
+          best = array;
+          bestIndex = i;
+        }
+      }
+      if (best != null)
+        arrays.remove(bestIndex);
+      return best;
+    }
+  }
+  
+  /**
+   * Method to put an array in a pool.  If the pool is full the shortest
+   * array in it is dropped to make room.
+   * @param arrays the pool
+   * @param array the array (may be null)
+   */
+  private static void give(List<SoftReference<Object>> arrays, Object array)
+  {
+    if (array == null)
+      return;
+    synchronized (arrays)
+    {
+      int smallestIndex = -1;
+      int smallestLength = Array.getLength(array);
+      for (int i = arrays.size() - 1; i >= 0; i--)
+      {
+        Object pooled = arrays.get(i).get();
+        if (pooled == null)
+          arrays.remove(i);
+        else if (pooled == array)
+          return;
+        else if (Array.getLength(pooled) < smallestLength)
+        {
+          smallestLength = Array.getLength(pooled);
+          smallestIndex = i;
+        }
+      }
+      if (arrays.size() >= MAX_POOLED)
+      {
+        // keep the longer arrays since they are the expensive ones
+        if (smallestIndex < 0)
+          return;
+        arrays.remove(smallestIndex);
+      }
+      arrays.add(new SoftReference<Object>(array));
+    }
+  }
+  
+}
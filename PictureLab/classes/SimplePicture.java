@@ -1,9 +1,14 @@
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
 import javax.swing.ImageIcon;
 import java.awt.*;
 import java.io.*;
 import java.awt.geom.*;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 /**
  * A class that represents a simple picture.  A simple picture may have
@@ -34,6 +39,12 @@ public class SimplePicture implements DigitalPicture
    */
   private BufferedImage bufferedImage;
   
+  /**
+   * the int array that backs the buffered image, one TYPE_INT_RGB
+   * value per pixel in row-major order
+   */
+  private int[] raster;
+  
   /**
    * frame used to display the simple picture
    */
@@ -44,6 +55,43 @@ public class SimplePicture implements DigitalPicture
    */
   private String extension;
   
+  /**
+   * the smallest number of pixels worth giving to one parallel task
+   * unless another size is given to setParallel
+   */
+  public static final int DEFAULT_MIN_BAND_SIZE = 1 << 16;
+  
+  /**
+   * the number of pixels in a new picture that is big enough to fill 
+   * with its background color in parallel even if parallel mode is off
+   */
+  public static final int PARALLEL_FILL_SIZE = 1 << 24;
+  
+  /**
+   * the pool to run filters on in parallel, or null to run them
+   * sequentially
+   */
+  private ForkJoinPool pool;
+  
+  /**
+   * the smallest number of pixels to give to one parallel task
+   */
+  private int minBandSize = DEFAULT_MIN_BAND_SIZE;
+  
+  /**
+   * how many times the pixels may have been changed, so things worked
+   * out from the pixels (like an IntegralImage) know when they are
+   * out of date
+   */
+  private int modificationCount;
+  
+  /**
+   * whether single pixels were set since the count was last read (setting
+   * a flag is safe from many threads at once where adding to the count
+   * isn't, so the count only goes up once for any number of pixels)
+   */
+  private boolean pixelsChanged;
+  
  
  /////////////////////// Constructors /////////////////////////
  
@@ -81,11 +129,7 @@ public class SimplePicture implements DigitalPicture
   */
  public  SimplePicture(int width, int height)
  {
-   bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-   title = "None";
-   fileName = "None";
-   extension = "jpg";
-   setAllPixelsToAColor(Color.white);
+   this(width,height,Color.white);
  }
  
  /**
@@ -98,8 +142,21 @@ public class SimplePicture implements DigitalPicture
   */
  public  SimplePicture(int width, int height, Color theColor)
  {
-   this(width,height);
-   setAllPixelsToAColor(theColor);
+   setBufferedImage(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+   title = "None";
+   fileName = "None";
+   extension = "jpg";
+   
+   // a new image starts out black so only fill it for other colors, 
+   // and use every core for really big pictures
+   int value = theColor.getRGB() & 0xffffff;
+   if (value != 0)
+   {
+     ForkJoinPool fillPool = null;
+     if ((long) width * height >= PARALLEL_FILL_SIZE)
+       fillPool = ForkJoinPool.commonPool();
+     fill(value,0,0,width,height,fillPool);
+   }
  }
  
  /**
@@ -115,21 +172,25 @@ public class SimplePicture implements DigitalPicture
    }
    if (copyPicture.title != null)
       this.title = new String(copyPicture.title);
+   this.pool = copyPicture.pool;
+   this.minBandSize = copyPicture.minBandSize;
    if (copyPicture.bufferedImage != null)
    {
-     this.bufferedImage = new BufferedImage(copyPicture.getWidth(),
-                                            copyPicture.getHeight(), BufferedImage.TYPE_INT_RGB);
+     setBufferedImage(new BufferedImage(copyPicture.getWidth(),
+                                        copyPicture.getHeight(), BufferedImage.TYPE_INT_RGB));
      this.copyPicture(copyPicture);
    }
  }
  
  /**
-  * A constructor that takes a buffered image
+  * A constructor that takes a buffered image.  A TYPE_INT_RGB image is
+  * used as is, any other kind of image is copied into a new TYPE_INT_RGB
+  * image first.
   * @param image the buffered image
   */
  public SimplePicture(BufferedImage image)
  {
-   this.bufferedImage = image;
+   setBufferedImage(image);
    title = "None";
    fileName = "None";
    extension = "jpg";
@@ -151,27 +212,79 @@ public class SimplePicture implements DigitalPicture
   */
  public void copyPicture(SimplePicture sourcePicture)
  {
-   Pixel sourcePixel = null;
-   Pixel targetPixel = null;
+   copyRegion(sourcePicture,0,0,sourcePicture.getWidth(),
+              sourcePicture.getHeight(),0,0);
+ }
+ 
+ /**
+  * Method to copy a rectangle of pixels from the passed source picture
+  * into this picture.  Any part of the rectangle that is outside of 
+  * either picture is skipped.  Each row is copied with one array copy,
+  * and big regions are copied in parallel bands of rows when parallel
+  * mode is on.
+  * @param sourcePicture the picture to copy from (may be this picture)
+  * @param sourceX the x of the top left corner to copy from
+  * @param sourceY the y of the top left corner to copy from
+  * @param width the width of the rectangle to copy
+  * @param height the height of the rectangle to copy
+  * @param targetX the x in this picture to copy the top left corner to
+  * @param targetY the y in this picture to copy the top left corner to
+  */
+ public void copyRegion(SimplePicture sourcePicture, int sourceX, int sourceY,
+                        int width, int height, int targetX, int targetY)
+ {
+   // clip the rectangle so it starts inside both pictures
+   int shiftX = Math.max(Math.max(-sourceX,-targetX),0);
+   int shiftY = Math.max(Math.max(-sourceY,-targetY),0);
+   sourceX += shiftX;
+   targetX += shiftX;
+   width -= shiftX;
+   sourceY += shiftY;
+   targetY += shiftY;
+   height -= shiftY;
    
-   // loop through the columns
-   for (int sourceX = 0, targetX = 0; 
-        sourceX < sourcePicture.getWidth() &&
-        targetX < this.getWidth();
-        sourceX++, targetX++)
+   // clip the rectangle so it ends inside both pictures
+   width = Math.min(width,Math.min(sourcePicture.getWidth() - sourceX,
+                                   this.getWidth() - targetX));
+   height = Math.min(height,Math.min(sourcePicture.getHeight() - sourceY,
+                                     this.getHeight() - targetY));
+   if (width <= 0 || height <= 0)
+     return;
+   modificationCount++;
+   
+   int[] source = sourcePicture.raster;
+   int[] target = this.raster;
+   int sourceWidth = sourcePicture.getWidth();
+   int targetWidth = this.getWidth();
+   int rowWidth = width;
+   int fromX = sourceX;
+   int fromY = sourceY;
+   int toX = targetX;
+   int toY = targetY;
+   
+   if (source == target && targetY > sourceY)
    {
-     // loop through the rows
-     for (int sourceY = 0, targetY = 0; 
-          sourceY < sourcePicture.getHeight() && 
-          targetY < this.getHeight();
-          sourceY++, targetY++)
-     {
-       sourcePixel = sourcePicture.getPixel(sourceX,sourceY);
-       targetPixel = this.getPixel(targetX,targetY);
-       targetPixel.setColor(sourcePixel.getColor());
-     }
+     // copying down inside the same picture so go from the bottom up
+     // to read each row before it is written over
+     for (int row = height - 1; row >= 0; row--)
+       System.arraycopy(source,(fromY + row) * sourceWidth + fromX,
+                        target,(toY + row) * targetWidth + toX,rowWidth);
+   }
+   else if (source == target)
+   {
+     for (int row = 0; row < height; row++)
+       System.arraycopy(source,(fromY + row) * sourceWidth + fromX,
+                        target,(toY + row) * targetWidth + toX,rowWidth);
+   }
+   else
+   {
+     forEachRowBand(toY,toY + height,(startRow, endRow) ->
+       {
+         for (int row = startRow; row < endRow; row++)
+           System.arraycopy(source,(fromY + row - toY) * sourceWidth + fromX,
+                            target,row * targetWidth + toX,rowWidth);
+       });
    }
-   
  }
  
  /**
@@ -180,15 +293,250 @@ public class SimplePicture implements DigitalPicture
   */
  public void setAllPixelsToAColor(Color color)
  {
-   // loop through all x
-   for (int x = 0; x < this.getWidth(); x++)
-   {
-     // loop through all y
-     for (int y = 0; y < this.getHeight(); y++)
+   fillRegion(0,0,getWidth(),getHeight(),color);
+ }
+ 
+ /**
+  * Method to set all the pixels in a rectangle of the picture to the 
+  * passed color.  Any part of the rectangle outside the picture is 
+  * skipped.  Rows are filled in parallel bands when parallel mode is on.
+  * @param x the x of the top left corner of the rectangle
+  * @param y the y of the top left corner of the rectangle
+  * @param width the width of the rectangle
+  * @param height the height of the rectangle
+  * @param color the color to set to
+  */
+ public void fillRegion(int x, int y, int width, int height, Color color)
+ {
+   // clip the rectangle to the picture
+   int left = Math.max(x,0);
+   int top = Math.max(y,0);
+   int right = (int) Math.min((long) x + width,getWidth());
+   int bottom = (int) Math.min((long) y + height,getHeight());
+   if (left < right && top < bottom)
+     fill(color.getRGB() & 0xffffff,left,top,right - left,bottom - top,pool);
+ }
+ 
+ /**
+  * Method to set a rectangle that is inside the picture to a pixel value
+  * with Arrays.fill.  When the rectangle is whole rows each band is
+  * filled with one call.
+  * @param value the pixel value to use
+  * @param x the x of the top left corner of the rectangle
+  * @param y the y of the top left corner of the rectangle
+  * @param width the width of the rectangle
+  * @param height the height of the rectangle
+  * @param fillPool the pool to fill bands in parallel on (may be null)
+  */
+ private void fill(int value, int x, int y, int width, int height,
+                   ForkJoinPool fillPool)
+ {
+   modificationCount++;
+   int[] data = raster;
+   int rowWidth = getWidth();
+   int minBandRows = Math.max(1,minBandSize / rowWidth);
+   RowBandTask.run(fillPool,y,y + height,minBandRows,(startRow, endRow) ->
      {
-       getPixel(x,y).setColor(color);
-     }
+       if (width == rowWidth)
+         Arrays.fill(data,startRow * rowWidth,endRow * rowWidth,value);
+       else
+         for (int row = startRow; row < endRow; row++)
+           Arrays.fill(data,row * rowWidth + x,row * rowWidth + x + width,value);
+     });
+ }
+ 
+ /**
+  * Method to use the passed image to hold the pixels for this picture.
+  * If the image isn't a plain TYPE_INT_RGB image it is converted to one
+  * so that the pixels can always be read and written directly in the
+  * int array that backs it.
+  * @param image the image to use
+  */
+ private void setBufferedImage(BufferedImage image)
+ {
+   if (!isIntRGB(image))
+   {
+     int width = image.getWidth();
+     int height = image.getHeight();
+     BufferedImage rgbImage = new BufferedImage(width, height, 
+                                                BufferedImage.TYPE_INT_RGB);
+     int[] data = ((DataBufferInt) rgbImage.getRaster().getDataBuffer()).getData();
+     
+     // convert the color model once here instead of on every pixel access
+     image.getRGB(0, 0, width, height, data, 0, width);
+     for (int i = 0; i < data.length; i++)
+       data[i] &= 0xffffff;
+     image = rgbImage;
+   }
+   modificationCount++;
+   bufferedImage = image;
+   raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+ }
+ 
+ /**
+  * Method to check if an image is a TYPE_INT_RGB image whose int array
+  * holds exactly width * height pixels starting at index 0
+  * @param image the image to check
+  * @return true if the array can be indexed directly else false
+  */
+ private static boolean isIntRGB(BufferedImage image)
+ {
+   if (image.getType() != BufferedImage.TYPE_INT_RGB ||
+       !(image.getSampleModel() instanceof SinglePixelPackedSampleModel))
+     return false;
+   SinglePixelPackedSampleModel model = 
+     (SinglePixelPackedSampleModel) image.getSampleModel();
+   return model.getScanlineStride() == image.getWidth() &&
+     image.getRaster().getSampleModelTranslateX() == 0 &&
+     image.getRaster().getSampleModelTranslateY() == 0 &&
+     image.getRaster().getDataBuffer().getOffset() == 0;
+ }
+ 
+ /**
+  * Method to get the int array that holds the pixels of this picture.
+  * Each int is a pixel value in red, green, blue order (8 bits each with
+  * blue in the lowest 8 bits) and the pixels are in row-major order, so
+  * the pixel at x and y is at index y * getWidth() + x.  Changes to the 
+  * array show up in the picture right away.  Since the caller may change
+  * the array this counts as a modification; call markModified if the
+  * array is changed again later.  Use getRasterDataForReading to only 
+  * read the pixels.
+  * @return the array that backs the buffered image
+  */
+ public int[] getRasterData()
+ {
+   modificationCount++;
+   return raster;
+ }
+ 
+ /**
+  * Method to get the int array that holds the pixels of this picture 
+  * (laid out as for getRasterData) just to read them.  This doesn't 
+  * count as a modification, so the caller must not change the array.
+  * @return the array that backs the buffered image
+  */
+ public int[] getRasterDataForReading()
+ {
+   return raster;
+ }
+ 
+ /**
+  * Method to get how many times the pixels may have been changed.  The
+  * count goes up on every change made through this class (setting 
+  * pixels, filters, copying, filling, drawing, getting the raster), so
+  * something worked out from the pixels is still good if the count is
+  * the same as when it was worked out.  Bulk changes add one to the 
+  * count, and any number of pixels set one at a time since the count 
+  * was last read add one too.
+  * @return the modification count
+  */
+ public int getModificationCount()
+ {
+   if (pixelsChanged)
+   {
+     pixelsChanged = false;
+     modificationCount++;
    }
+   return modificationCount;
+ }
+ 
+ /**
+  * Method to record that the pixels were changed some other way, such
+  * as through the buffered image or a raster array kept from earlier
+  */
+ public void markModified()
+ {
+   modificationCount++;
+ }
+ 
+ /**
+  * Method to turn parallel mode on or off.  In parallel mode the filters
+  * split the picture into bands of rows and work on the bands at the 
+  * same time on the common fork/join pool.  The result is exactly the
+  * same as when the filters run sequentially.
+  * @param parallel true to run filters in parallel else false
+  */
+ public void setParallel(boolean parallel)
+ {
+   if (parallel)
+     setParallel(ForkJoinPool.commonPool(), DEFAULT_MIN_BAND_SIZE);
+   else
+     setParallel(null, DEFAULT_MIN_BAND_SIZE);
+ }
+ 
+ /**
+  * Method to run filters in parallel on the passed pool.  Bands are never
+  * smaller than the passed number of pixels, so a picture smaller than
+  * two bands is still done sequentially.
+  * @param pool the pool to use or null to run sequentially
+  * @param minBandSize the smallest number of pixels to give to one task
+  */
+ public void setParallel(ForkJoinPool pool, int minBandSize)
+ {
+   this.pool = pool;
+   this.minBandSize = Math.max(1,minBandSize);
+ }
+ 
+ /**
+  * Method to check if filters run in parallel
+  * @return true if filters run in parallel else false
+  */
+ public boolean isParallel()
+ {
+   return pool != null;
+ }
+ 
+ /**
+  * Method to run an action on the rows of this picture in bands.  In 
+  * parallel mode the bands run at the same time, otherwise the action
+  * is run once for all the rows.
+  * @param action the work to do on each band of rows
+  */
+ public void forEachRowBand(RowBandTask.BandAction action)
+ {
+   forEachRowBand(0,getHeight(),action);
+ }
+ 
+ /**
+  * Method to run an action on some of the rows of this picture in bands.
+  * In parallel mode the bands run at the same time, otherwise the action
+  * is run once for all the rows.
+  * @param startRow the first row to work on
+  * @param endRow one past the last row to work on
+  * @param action the work to do on each band of rows
+  */
+ public void forEachRowBand(int startRow, int endRow, 
+                            RowBandTask.BandAction action)
+ {
+   int minBandRows = Math.max(1, minBandSize / Math.max(1,getWidth()));
+   RowBandTask.run(pool,startRow,endRow,minBandRows,action);
+ }
+ 
+ /**
+  * Method to do an action on every pixel, in parallel bands of rows when 
+  * parallel mode is on.  Each band uses its own PixelCursor.  The action
+  * must only depend on the pixel it is given since pixels in different
+  * bands can be visited in any order.
+  * @param action the action to do on each pixel
+  */
+ public void parallelForEachPixel(Consumer<Pixel> action)
+ {
+   forEachRowBand((startRow, endRow) -> forEachPixel(startRow,endRow,action));
+ }
+ 
+ /**
+  * Method to run a filter on the raster of this picture.  The raster is
+  * handed to the filter in bands of whole rows, in parallel when 
+  * parallel mode is on.
+  * @param filter the filter to run
+  */
+ public void applyFilter(RasterKernels.Filter filter)
+ {
+   modificationCount++;
+   int[] data = raster;
+   int width = getWidth();
+   forEachRowBand((startRow, endRow) -> 
+                  filter.apply(data,startRow * width,endRow * width));
  }
  
  /**
@@ -206,6 +554,7 @@ public class SimplePicture implements DigitalPicture
   */
  public Graphics getGraphics()
  {
+   modificationCount++;
    return bufferedImage.getGraphics();
  }
  
@@ -215,6 +564,7 @@ public class SimplePicture implements DigitalPicture
   */
  public Graphics2D createGraphics()
  {
+   modificationCount++;
    return bufferedImage.createGraphics();
  }
  
@@ -297,7 +647,8 @@ public class SimplePicture implements DigitalPicture
   */
  public int getBasicPixel(int x, int y)
  {
-    return bufferedImage.getRGB(x,y);
+   // the image has no alpha so every pixel is fully opaque
+   return raster[index(x,y)] | 0xff000000;
  }
     
  /** 
@@ -308,7 +659,23 @@ public class SimplePicture implements DigitalPicture
   */     
  public void setBasicPixel(int x, int y, int rgb)
  {
-   bufferedImage.setRGB(x,y,rgb);
+   // the image has no alpha so only keep the red, green, and blue
+   raster[index(x,y)] = rgb & 0xffffff;
+   pixelsChanged = true;
+ }
+ 
+ /**
+  * Method to get the index in the raster of the pixel at x and y
+  * @param x the x coordinate of the pixel
+  * @param y the y coordinate of the pixel
+  * @return the index of the pixel in the raster
+  */
+ private int index(int x, int y)
+ {
+   int width = bufferedImage.getWidth();
+   if (x < 0 || x >= width || y < 0 || y >= bufferedImage.getHeight())
+     throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+   return y * width + x;
  }
   
  /**
@@ -368,7 +735,7 @@ public class SimplePicture implements DigitalPicture
  public void load(Image image)
  {
    // get a graphics context to use to draw on the buffered image
-   Graphics2D graphics2d = bufferedImage.createGraphics();
+   Graphics2D graphics2d = createGraphics();
    
    // draw the image on the buffered image starting at 0,0
    graphics2d.drawImage(image,0,0,null);
@@ -449,9 +816,7 @@ public class SimplePicture implements DigitalPicture
    this.fileName = fileName;
    
    // set the extension
-   int posDot = fileName.indexOf('.');
-   if (posDot >= 0)
-     this.extension = fileName.substring(posDot + 1);
+   this.extension = extensionOf(fileName,this.extension);
    
    // if the current title is null use the file name
    if (title == null)
@@ -470,7 +835,15 @@ public class SimplePicture implements DigitalPicture
      }
    }
    
-   bufferedImage = ImageIO.read(file);
+   // raw picture files skip the image codecs
+   BufferedImage image = RawPictureFile.isRawExtension(extension) ?
+     RawPictureFile.read(file) : ImageIO.read(file);
+   if (image == null)
+   {
+     throw new IOException(this.fileName +
+                           " could not be read. Check that it is an image file");
+   }
+   setBufferedImage(image);
  }
 
 
@@ -488,8 +861,8 @@ public class SimplePicture implements DigitalPicture
 
      } catch (Exception ex) {
          System.out.println("There was an error trying to open " + fileName);
-         bufferedImage = new BufferedImage(600,200,
-                                           BufferedImage.TYPE_INT_RGB);
+         setBufferedImage(new BufferedImage(600,200,
+                                            BufferedImage.TYPE_INT_RGB));
          addMessage("Couldn't load " + fileName,5,100);
          return false;
      }
@@ -516,7 +889,7 @@ public class SimplePicture implements DigitalPicture
  public void addMessage(String message, int xPos, int yPos)
  {
    // get a graphics context to use to draw on the buffered image
-   Graphics2D graphics2d = bufferedImage.createGraphics();
+   Graphics2D graphics2d = createGraphics();
    
    // set the color to white
    graphics2d.setPaint(Color.white);
@@ -542,29 +915,30 @@ public class SimplePicture implements DigitalPicture
  
  /**
    * Method to create a new picture by scaling the current
-   * picture by the given 
+   * picture by the given factors.  The new pixels are worked out with
+   * bicubic weights (see Resampler).
    * @param rFactor the amount to scale in the height (rows)
    * @param cFactor the amount to scale in the width (columns)
    * @return the resulting picture
    */
   public Picture scale(double rFactor, double cFactor)
   {
-    // set up the scale tranform
-    AffineTransform scaleTransform = new AffineTransform();
-    scaleTransform.scale(cFactor,rFactor);
-    
-    // create a new picture object that is the right size
-    Picture result = new Picture((int) (getHeight() * rFactor),
-                                 (int) (getWidth() * cFactor));
-    
-    // get the graphics 2d object to draw on the result
-    Graphics graphics = result.getGraphics();
-    Graphics2D g2 = (Graphics2D) graphics;
-    
-    // draw the current image onto the result image scaled
-    g2.drawImage(this.getImage(),scaleTransform,null);
-    
-    return result;
+    return scale(rFactor,cFactor,Resampler.Filter.BICUBIC);
+  }
+  
+  /**
+   * Method to create a new picture by scaling the current
+   * picture by the given factors using the given filter
+   * @param rFactor the amount to scale in the height (rows)
+   * @param cFactor the amount to scale in the width (columns)
+   * @param filter the filter to work out the new pixels with
+   * @return the resulting picture
+   */
+  public Picture scale(double rFactor, double cFactor, 
+                       Resampler.Filter filter)
+  {
+    return Resampler.resize(this,(int) (getWidth() * cFactor),
+                            (int) (getHeight() * rFactor),filter);
   }
   
   /**
@@ -643,14 +1017,34 @@ public class SimplePicture implements DigitalPicture
    }
    
    // get the extension
-   int posDot = fileName.indexOf('.');
-   if (posDot >= 0)
-       extension = fileName.substring(posDot + 1);
+   extension = extensionOf(fileName,extension);
    
    // write the contents of the buffered image to the file as jpeg
-   ImageIO.write(bufferedImage, extension, file);
+   // (or as a raw picture file for the raw extensions)
+   if (RawPictureFile.isRawExtension(extension))
+     RawPictureFile.write(this, file, 
+                          RawPictureFile.COMPRESSED_EXTENSION.equalsIgnoreCase(extension));
+   else if (!ImageIO.write(bufferedImage, extension, file))
+     throw new IOException("There is no writer for " + extension + " files");
      
  }
+ 
+ /**
+  * Method to get the extension of a file name: what comes after the last
+  * dot in the name of the file itself (so dots in the directories don't
+  * count)
+  * @param fileName the file name (may include directories)
+  * @param defaultExtension the extension to use if the name has no dot
+  * @return the extension
+  */
+ static String extensionOf(String fileName, String defaultExtension)
+ {
+   String name = new File(fileName).getName();
+   int posDot = name.lastIndexOf('.');
+   if (posDot < 0)
+     return defaultExtension;
+   return name.substring(posDot + 1);
+ }
 
  /**
   * Method to write the contents of the picture to a file with 
@@ -0,0 +1,968 @@
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Class for a picture that is too big to keep in memory all at once.  The
+ * picture is cut into square tiles and a tile is only read from the file
+ * (with an image reader and a source region) when one of its pixels is
+ * used.  The tiles used most recently are kept in memory up to a number
+ * of bytes, and when a tile has to make room for another one it is just
+ * dropped if it wasn't changed or written to a scratch file if it was, so
+ * changes are never lost.  The file the picture came from is never
+ * changed; use write to save the picture.
+ *
+ * Pixels are read and set with getBasicPixel and setBasicPixel (or a
+ * Pixel or PixelCursor) just like a simple picture.  Going through the
+ * pixels in row-major order only needs one row of tiles in memory.  To
+ * use the filters of Picture, copy a part of the picture out with
+ * getRegion, change it, and put it back with setRegion.
+ *
+ * Some formats (like JPEG and PNG) have to be decoded from the start up
+ * to the region, so for any format whose reader doesn't keep the picture
+ * in tiles a whole row of tiles is decoded at once and cut into tiles.
+ * Rows near the bottom of such a file still take longer to read.  At
+ * least one row of tiles is always kept in memory, whatever number of
+ * bytes was asked for, so going through the pixels in order never reads
+ * a tile twice.
+ *
+ * Writing to a raw picture file (see RawPictureFile) goes through the
+ * tiles a row at a time, so a picture of any size can be saved, and a
+ * plain one can be opened again as a MappedPicture.  Other formats are
+ * written from a copy of the whole picture in memory, as is the image
+ * from getBufferedImage, so those refuse pictures with more than
+ * MAX_COPY_PIXELS pixels.  Showing and exploring use getReducedCopy, so
+ * a bigger picture is shown shrunk to fit.
+ */
+public class TiledPicture implements DigitalPicture, Closeable
+{
+
+  /** the width and height of a tile in pixels */
+  public static final int TILE_SIZE = 512;
+
+  /** 
+   * the number of bytes of tiles kept in memory if none is given (or one
+   * row of tiles if that is more)
+   */
+  public static final long DEFAULT_CACHE_BYTES = 64L << 20;
+
+  /** the most pixels a copy of the whole picture may have */
+  public static final long MAX_COPY_PIXELS = 1L << 26;
+
+  /** the bytes one full tile uses */
+  private static final int TILE_BYTES = TILE_SIZE * TILE_SIZE * 4;
+
+  /** the file name the picture came from */
+  private String fileName;
+
+  /** the extension of the file (used to write to a name without one) */
+  private String extension = "jpg";
+
+  /** the title of the picture */
+  private String title;
+
+  /** the width of the picture */
+  private int width;
+
+  /** the height of the picture */
+  private int height;
+
+  /** the number of tiles across */
+  private int tilesAcross;
+
+  /** the stream the picture is read from (null if not from a file) */
+  private ImageInputStream input;
+
+  /** the reader for the picture's file (null if not from a file) */
+  private ImageReader reader;
+
+  /** the most bytes of tiles asked for */
+  private final long cacheBytes;
+
+  /** the most bytes of tiles to keep in memory (at least one row) */
+  private long budget;
+
+  /** true to decode a whole row of tiles at once */
+  private boolean readByRow;
+
+  /** the bytes of the tiles in memory now */
+  private long cachedBytes;
+
+  /** the tiles in memory by tile number, least recently used first */
+  private final LinkedHashMap<Integer,Tile> tiles =
+    new LinkedHashMap<Integer,Tile>(16,0.75f,true);
+
+  /** where in the scratch file each changed tile that was dropped is */
+  private final Map<Integer,Long> spilled = new HashMap<Integer,Long>();
+
+  /** the scratch file for changed tiles (made when first needed) */
+  private File scratchFile;
+
+  /** the channel to the scratch file */
+  private FileChannel scratch;
+
+  /** the buffer used to move a tile to and from the scratch file */
+  private ByteBuffer scratchBuffer;
+
+  /** the tile number of the last tile used */
+  private int lastIndex = -1;
+
+  /** the last tile used (checked first since pixels are used in order) */
+  private Tile lastTile;
+
+  /** the frame the picture is shown in */
+  private PictureFrame pictureFrame;
+
+  ///////////////////////// constructors //////////////////////////////
+
+  /**
+   * Constructor that takes the file name of the picture and keeps the
+   * default number of bytes of tiles in memory
+   * @param fileName the name of the file to read the picture from
+   */
+  public TiledPicture(String fileName)
+  {
+    this(fileName,DEFAULT_CACHE_BYTES);
+  }
+
+  /**
+   * Constructor that takes the file name of the picture and the number
+   * of bytes of tiles to keep in memory
+   * @param fileName the name of the file to read the picture from
+   * @param cacheBytes the most bytes of tiles to keep in memory (at least
+   * one row of tiles is always kept)
+   */
+  public TiledPicture(String fileName, long cacheBytes)
+  {
+    this.cacheBytes = cacheBytes;
+    load(fileName);
+  }
+
+  /**
+   * Constructor that makes an all black picture
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @param cacheBytes the most bytes of tiles to keep in memory (at least
+   * one row of tiles is always kept)
+   */
+  public TiledPicture(int width, int height, long cacheBytes)
+  {
+    if (width <= 0 || height <= 0)
+      throw new IllegalArgumentException(
+        "The width and height must be more than 0");
+    this.cacheBytes = cacheBytes;
+    fileName = "None";
+    title = "None";
+    setSize(width,height);
+  }
+
+  ///////////////////////// public methods //////////////////////////////
+
+  /**
+   * Method to get the file name the picture came from
+   * @return the file name
+   */
+  public String getFileName() { return fileName; }
+
+  /**
+   * Method to get the title of the picture
+   * @return the title
+   */
+  public String getTitle() { return title; }
+
+  /**
+   * Method to set the title of the picture
+   * @param title the title to use
+   */
+  public void setTitle(String title)
+  {
+    this.title = title;
+    if (pictureFrame != null)
+      pictureFrame.setTitle(title);
+  }
+
+  /**
+   * Method to get the width of the picture in pixels
+   * @return the width
+   */
+  public int getWidth() { return width; }
+
+  /**
+   * Method to get the height of the picture in pixels
+   * @return the height
+   */
+  public int getHeight() { return height; }
+
+  /**
+   * Method to get the number of bytes of tiles in memory now
+   * @return the bytes of the tiles in memory
+   */
+  public synchronized long getCachedBytes() { return cachedBytes; }
+
+  /**
+   * Method to get an image to show the picture: a copy of the whole
+   * picture, shrunk if it has more than MAX_COPY_PIXELS pixels (see
+   * getReducedCopy)
+   * @return a copy of the picture as an image
+   */
+  public Image getImage()
+  {
+    return getReducedCopy(MAX_COPY_PIXELS).getBufferedImage();
+  }
+
+  /**
+   * Method to get a buffered image of the whole picture.  This is a
+   * copy, so the picture has to fit in memory and changing the image
+   * doesn't change the picture.
+   * @return a copy of the picture as a buffered image
+   * @throws IllegalStateException if the picture has more than
+   * MAX_COPY_PIXELS pixels
+   */
+  public BufferedImage getBufferedImage()
+  {
+    return copyAll().getBufferedImage();
+  }
+
+  /**
+   * Method to return the pixel value as an int for the given x and y location
+   * @param x the x coordinate of the pixel
+   * @param y the y coordinate of the pixel
+   * @return the pixel value as an integer (alpha, red, green, blue)
+   */
+  public synchronized int getBasicPixel(int x, int y)
+  {
+    checkBounds(x,y);
+    Tile tile = tileAt(x,y);
+    return tile.pixels[(y % TILE_SIZE) * tile.width + x % TILE_SIZE] |
+      0xff000000;
+  }
+
+  /**
+   * Method to set the value of a pixel in the picture from an int
+   * @param x the x coordinate of the pixel
+   * @param y the y coordinate of the pixel
+   * @param rgb the new rgb value of the pixel (alpha, red, green, blue)
+   */
+  public synchronized void setBasicPixel(int x, int y, int rgb)
+  {
+    checkBounds(x,y);
+    Tile tile = tileAt(x,y);
+    tile.pixels[(y % TILE_SIZE) * tile.width + x % TILE_SIZE] = rgb & 0xffffff;
+    tile.dirty = true;
+  }
+
+  /**
+   * Method to get a pixel object for the given x and y location
+   * @param x  the x location of the pixel in the picture
+   * @param y  the y location of the pixel in the picture
+   * @return a Pixel object for this location
+   */
+  public Pixel getPixel(int x, int y)
+  {
+    return new Pixel(this,x,y);
+  }
+
+  /**
+   * Method to get a one-dimensional array of Pixels for this picture.
+   * For a big picture use forEachPixel instead, which doesn't make a
+   * Pixel object for each location.
+   * @return a one-dimensional array of Pixel objects starting with y=0
+   * to y=height-1 and x=0 to x=width-1.
+   */
+  public Pixel[] getPixels()
+  {
+    Pixel[] pixelArray = new Pixel[width * height];
+    for (int row = 0; row < height; row++)
+      for (int col = 0; col < width; col++)
+        pixelArray[row * width + col] = new Pixel(this,col,row);
+    return pixelArray;
+  }
+
+  /**
+   * Method to get a two-dimensional array of Pixels for this picture
+   * @return a two-dimensional array of Pixel objects in row-major order.
+   */
+  public Pixel[][] getPixels2D()
+  {
+    Pixel[][] pixelArray = new Pixel[height][width];
+    for (int row = 0; row < height; row++)
+      for (int col = 0; col < width; col++)
+        pixelArray[row][col] = new Pixel(this,col,row);
+    return pixelArray;
+  }
+
+  /**
+   * Method to get a copy of a rectangle of the picture
+   * @param x the x of the top left corner of the rectangle
+   * @param y the y of the top left corner of the rectangle
+   * @param regionWidth the width of the rectangle
+   * @param regionHeight the height of the rectangle
+   * @return a new picture with the pixels of the rectangle
+   */
+  public synchronized Picture getRegion(int x, int y, int regionWidth,
+                                        int regionHeight)
+  {
+    checkRegion(x,y,regionWidth,regionHeight);
+    // a new image starts black, so there is no fill before every pixel
+    // is copied from the tiles
+    Picture region = new Picture(new BufferedImage(regionWidth,regionHeight,
+                                                   BufferedImage.TYPE_INT_RGB));
+    int[] raster = region.getRasterData();
+    copyTiles(raster,x,y,regionWidth,regionHeight,false);
+    return region;
+  }
+
+  /**
+   * Method to get a copy of the whole picture shrunk by the smallest
+   * power of two that leaves at most a number of pixels (but never by
+   * more than TILE_SIZE).  Each tile is read in turn and shrunk by
+   * averaging squares of pixels, so only the copy and one row of tiles
+   * have to be in memory.
+   * @param maxPixels the most pixels the copy should have
+   * @return the shrunk copy (a plain copy if the picture is small enough)
+   */
+  public synchronized Picture getReducedCopy(long maxPixels)
+  {
+    int factor = 1;
+    while (factor < TILE_SIZE &&
+           (long) shrink(width,factor) * shrink(height,factor) > maxPixels)
+      factor *= 2;
+    if (factor == 1)
+      return getRegion(0,0,width,height);
+
+    Picture copy = new Picture(new BufferedImage(shrink(width,factor),
+                                                 shrink(height,factor),
+                                                 BufferedImage.TYPE_INT_RGB));
+    for (int tileY = 0; tileY < height; tileY += TILE_SIZE)
+    {
+      for (int tileX = 0; tileX < width; tileX += TILE_SIZE)
+      {
+        int tileWidth = Math.min(TILE_SIZE,width - tileX);
+        int tileHeight = Math.min(TILE_SIZE,height - tileY);
+        Picture small = Resampler.resize(getRegion(tileX,tileY,tileWidth,
+                                                   tileHeight),
+                                         shrink(tileWidth,factor),
+                                         shrink(tileHeight,factor),
+                                         Resampler.Filter.BOX);
+        copy.copyRegion(small,0,0,small.getWidth(),small.getHeight(),
+                        tileX / factor,tileY / factor);
+      }
+    }
+    copy.setTitle(title + " (1/" + factor + " size)");
+    return copy;
+  }
+
+  /**
+   * Method to copy a picture into this picture
+   * @param x the x where the top left corner of the picture goes
+   * @param y the y where the top left corner of the picture goes
+   * @param region the picture to copy (it has to fit)
+   */
+  public synchronized void setRegion(int x, int y, SimplePicture region)
+  {
+    checkRegion(x,y,region.getWidth(),region.getHeight());
+    copyTiles(region.getRasterDataForReading(),x,y,region.getWidth(),
+              region.getHeight(),true);
+  }
+
+  /**
+   * Method to load the picture with the passed image.  The image is
+   * drawn over the top left of the picture.
+   * @param image the image to use
+   */
+  public void load(Image image)
+  {
+    int imageWidth = Math.min(image.getWidth(null),width);
+    int imageHeight = Math.min(image.getHeight(null),height);
+    if (imageWidth > 0 && imageHeight > 0)
+    {
+      Picture region = getRegion(0,0,imageWidth,imageHeight);
+      Graphics2D graphics2d = region.createGraphics();
+      graphics2d.drawImage(image,0,0,null);
+      graphics2d.dispose();
+      setRegion(0,0,region);
+    }
+    show();
+  }
+
+  /**
+   * Method to open the picture in a file.  Only the size is read now;
+   * the pixels are read a tile at a time when they are used.
+   * @param fileName the name of the file to read the picture from
+   * @throws IOException if the file can't be read as a picture
+   */
+  public synchronized void loadOrFail(String fileName) throws IOException
+  {
+    File file = new File(fileName);
+    if (!file.canRead())
+    {
+      // try adding the media path
+      file = new File(FileChooser.getMediaPath(fileName));
+      if (!file.canRead())
+        throw new IOException(fileName +
+                              " could not be opened. Check that you specified the path");
+    }
+
+    ImageInputStream newInput = ImageIO.createImageInputStream(file);
+    Iterator<ImageReader> readers = newInput == null ? null :
+      ImageIO.getImageReaders(newInput);
+    if (readers == null || !readers.hasNext())
+    {
+      if (newInput != null)
+        newInput.close();
+      throw new IOException(fileName +
+                            " could not be read. Check that it is an image file");
+    }
+    ImageReader newReader = readers.next();
+    newReader.setInput(newInput,true,true);
+    boolean tiled = newReader.isImageTiled(0);
+
+    close();
+    input = newInput;
+    reader = newReader;
+    readByRow = !tiled;
+    this.fileName = fileName;
+    extension = SimplePicture.extensionOf(fileName,extension);
+    if (title == null)
+      title = fileName;
+    setSize(reader.getWidth(0),reader.getHeight(0));
+  }
+
+  /**
+   * Method to open the picture in a file without throwing errors
+   * @param fileName the name of the file to read the picture from
+   * @return true if success else false
+   */
+  public boolean load(String fileName)
+  {
+    try {
+      loadOrFail(fileName);
+      return true;
+    } catch (Exception ex) {
+      System.out.println("There was an error trying to open " + fileName);
+      if (width == 0)
+      {
+        this.fileName = fileName;
+        title = fileName;
+        setSize(1,1);
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Method to show the picture in a picture frame.  The frame shows a
+   * copy of the whole picture, shrunk if it has more than
+   * MAX_COPY_PIXELS pixels.
+   */
+  public void show()
+  {
+    if (pictureFrame != null)
+      pictureFrame.updateImageAndShowIt();
+    else
+      pictureFrame = new PictureFrame(this);
+  }
+
+  /**
+   * Method to open a picture explorer on a copy (in memory) of this
+   * picture, shrunk if it has more than MAX_COPY_PIXELS pixels.  Use
+   * getRegion to explore part of a big picture at full size.
+   */
+  public void explore()
+  {
+    new PictureExplorer(getReducedCopy(MAX_COPY_PIXELS));
+  }
+
+  /**
+   * Method to write the picture to a file.  A raw picture file is written
+   * a row of tiles at a time; any other kind is written from a copy of
+   * the whole picture.  If the name has no extension the extension of
+   * the file the picture came from is used.
+   * @param fileName the name of the file to write the picture to
+   * @throws IOException if the file can't be written
+   * @throws IllegalStateException if the picture has more than
+   * MAX_COPY_PIXELS pixels and the file isn't a raw picture file
+   */
+  public void writeOrFail(String fileName) throws IOException
+  {
+    String writeExtension = SimplePicture.extensionOf(fileName,extension);
+    File file = new File(fileName);
+    if (RawPictureFile.isRawExtension(writeExtension))
+      writeRaw(file,RawPictureFile.COMPRESSED_EXTENSION.equalsIgnoreCase(
+                 writeExtension));
+    else if (!ImageIO.write(getBufferedImage(),writeExtension,file))
+      throw new IOException("There is no writer for " + writeExtension +
+                            " files");
+  }
+
+  /**
+   * Method to write the picture to a file without throwing errors
+   * @param fileName the name of the file to write the picture to
+   * @return true if success else false
+   */
+  public boolean write(String fileName)
+  {
+    try {
+      writeOrFail(fileName);
+      return true;
+    } catch (Exception ex) {
+      System.out.println("There was an error trying to write " + fileName);
+      ex.printStackTrace();
+      return false;
+    }
+  }
+
+  /**
+   * Method to close the picture's file and delete the scratch file.
+   * Any changes not copied out of the picture are lost.
+   * @throws IOException if a file can't be closed
+   */
+  public synchronized void close() throws IOException
+  {
+    tiles.clear();
+    spilled.clear();
+    cachedBytes = 0;
+    lastIndex = -1;
+    lastTile = null;
+    if (reader != null)
+    {
+      reader.dispose();
+      reader = null;
+    }
+    if (input != null)
+    {
+      input.close();
+      input = null;
+    }
+    if (scratch != null)
+    {
+      scratch.close();
+      scratch = null;
+      scratchFile.delete();
+      scratchFile = null;
+    }
+  }
+
+  /**
+   * Method to return a string with information about this picture
+   * @return a string with information about the picture
+   */
+  public String toString()
+  {
+    return "Tiled Picture, filename " + fileName + " height " + height +
+      " width " + width;
+  }
+
+  ///////////////////////// helper methods //////////////////////////////
+
+  /**
+   * Class for one tile of pixels
+   */
+  private static class Tile
+  {
+    /** the pixels in row-major order */
+    private final int[] pixels;
+
+    /** the width of the tile (less than TILE_SIZE at the right edge) */
+    private final int width;
+
+    /** true if a pixel was changed since the tile was read */
+    private boolean dirty;
+
+    /**
+     * Constructor that takes the size of the tile
+     * @param width the width of the tile
+     * @param height the height of the tile
+     */
+    private Tile(int width, int height)
+    {
+      this.width = width;
+      pixels = new int[width * height];
+    }
+  }
+
+  /**
+   * Method to set the size of the picture and forget all of the tiles
+   * @param newWidth the width of the picture
+   * @param newHeight the height of the picture
+   */
+  private void setSize(int newWidth, int newHeight)
+  {
+    width = newWidth;
+    height = newHeight;
+    tilesAcross = (width + TILE_SIZE - 1) / TILE_SIZE;
+    budget = Math.max(cacheBytes,4L * width * Math.min(TILE_SIZE,height));
+    tiles.clear();
+    spilled.clear();
+    cachedBytes = 0;
+    lastIndex = -1;
+    lastTile = null;
+  }
+
+  /**
+   * Method to check that a location is in the picture
+   * @param x the x coordinate
+   * @param y the y coordinate
+   */
+  private void checkBounds(int x, int y)
+  {
+    if (x < 0 || x >= width || y < 0 || y >= height)
+      throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+  }
+
+  /**
+   * Method to check that the whole picture is small enough to copy into
+   * memory
+   */
+  private void checkCopySize()
+  {
+    if ((long) width * height > MAX_COPY_PIXELS)
+      throw new IllegalStateException("The picture is " + width + " by " +
+        height + ", too big to copy into memory; use getRegion for part " +
+        "of it or write it as a ." + RawPictureFile.EXTENSION + " file");
+  }
+
+  /**
+   * Method to copy the whole picture into memory
+   * @return a new picture with all of the pixels
+   */
+  private Picture copyAll()
+  {
+    checkCopySize();
+    return getRegion(0,0,width,height);
+  }
+
+  /**
+   * Method to get a length shrunk by a factor, rounding up
+   * @param length the length
+   * @param factor the factor to shrink by
+   * @return the shrunk length
+   */
+  private static int shrink(int length, int factor)
+  {
+    return (length + factor - 1) / factor;
+  }
+
+  /**
+   * Method to write the picture to a raw picture file, reading the
+   * pixels from the tiles in row-major order
+   * @param file the file to write
+   * @param compress true to compress the pixels
+   * @throws IOException if the file can't be written
+   */
+  private synchronized void writeRaw(File file, boolean compress)
+    throws IOException
+  {
+    RawPictureFile.write(width,height,this::getPixels,file,compress);
+  }
+
+  /**
+   * Method to copy pixels in row-major order out of the tiles
+   * @param start the index of the first pixel (y * width + x)
+   * @param pixels the array to copy into (starting at index 0)
+   * @param count the number of pixels to copy
+   */
+  private void getPixels(long start, int[] pixels, int count)
+  {
+    int done = 0;
+    while (done < count)
+    {
+      int y = (int) ((start + done) / width);
+      int x = (int) ((start + done) % width);
+      int rowEnd = x + Math.min(count - done,width - x);
+
+      // copy the part of the row in each tile
+      while (x < rowEnd)
+      {
+        Tile tile = tileAt(x,y);
+        int tileX = x / TILE_SIZE * TILE_SIZE;
+        int length = Math.min(rowEnd,tileX + tile.width) - x;
+        System.arraycopy(tile.pixels,(y % TILE_SIZE) * tile.width + x - tileX,
+                         pixels,done,length);
+        x += length;
+        done += length;
+      }
+    }
+  }
+
+  /**
+   * Method to check that a rectangle is in the picture
+   * @param x the x of the top left corner
+   * @param y the y of the top left corner
+   * @param regionWidth the width of the rectangle
+   * @param regionHeight the height of the rectangle
+   */
+  private void checkRegion(int x, int y, int regionWidth, int regionHeight)
+  {
+    if (regionWidth <= 0 || regionHeight <= 0 || x < 0 || y < 0 ||
+        x > width - regionWidth || y > height - regionHeight)
+      throw new IllegalArgumentException("The region " +
+        new Rectangle(x,y,regionWidth,regionHeight) + " isn't in the picture");
+  }
+
+  /**
+   * Method to copy a rectangle of pixels between an array and the tiles,
+   * one tile at a time
+   * @param raster the array (the rectangle's rows, one after another)
+   * @param x the x of the top left corner of the rectangle
+   * @param y the y of the top left corner of the rectangle
+   * @param regionWidth the width of the rectangle
+   * @param regionHeight the height of the rectangle
+   * @param toTiles true to copy into the tiles, false to copy out
+   */
+  private void copyTiles(int[] raster, int x, int y, int regionWidth,
+                         int regionHeight, boolean toTiles)
+  {
+    for (int tileY = y / TILE_SIZE * TILE_SIZE; tileY < y + regionHeight;
+         tileY += TILE_SIZE)
+    {
+      for (int tileX = x / TILE_SIZE * TILE_SIZE; tileX < x + regionWidth;
+           tileX += TILE_SIZE)
+      {
+        Tile tile = tileAt(tileX,tileY);
+        int left = Math.max(x,tileX);
+        int right = Math.min(x + regionWidth,tileX + tile.width);
+        int top = Math.max(y,tileY);
+        int bottom = Math.min(y + regionHeight,tileY + TILE_SIZE);
+        for (int row = top; row < bottom; row++)
+        {
+          int inTile = (row - tileY) * tile.width + left - tileX;
+          int inRaster = (row - y) * regionWidth + left - x;
+          if (toTiles)
+            System.arraycopy(raster,inRaster,tile.pixels,inTile,right - left);
+          else
+            System.arraycopy(tile.pixels,inTile,raster,inRaster,right - left);
+        }
+        if (toTiles)
+          tile.dirty = true;
+      }
+    }
+  }
+
+  /**
+   * Method to get the tile with a pixel in it, reading it if it isn't in
+   * memory
+   * @param x the x coordinate of the pixel
+   * @param y the y coordinate of the pixel
+   * @return the tile
+   */
+  private Tile tileAt(int x, int y)
+  {
+    int index = (y / TILE_SIZE) * tilesAcross + x / TILE_SIZE;
+    if (index == lastIndex)
+      return lastTile;
+    Tile tile = tiles.get(index);
+    if (tile == null)
+    {
+      try
+      {
+        tile = readTile(index);
+      }
+      catch (IOException ex)
+      {
+        throw new UncheckedIOException("Couldn't read a tile of " + fileName,
+                                       ex);
+      }
+    }
+    lastIndex = index;
+    lastTile = tile;
+    return tile;
+  }
+
+  /**
+   * Method to read a tile (from the scratch file if it was changed and
+   * dropped, else from the picture's file) and put it in memory,
+   * dropping the least recently used tiles if there isn't room.  When
+   * the picture's file is read a row of tiles at a time the other tiles
+   * of the row that aren't in memory are made too.
+   * @param index the tile number
+   * @return the tile
+   * @throws IOException if the tile can't be read
+   */
+  private Tile readTile(int index) throws IOException
+  {
+    Long offset = spilled.get(index);
+    if (offset != null)
+    {
+      // changed tiles always come back marked as changed
+      Tile tile = makeTile(index);
+      readScratch(tile,offset);
+      tile.dirty = true;
+      return tile;
+    }
+    if (reader == null)
+      return makeTile(index);
+    int tileY = index / tilesAcross * TILE_SIZE;
+    int tileHeight = Math.min(TILE_SIZE,height - tileY);
+    if (!readByRow)
+    {
+      Tile tile = makeTile(index);
+      int tileX = index % tilesAcross * TILE_SIZE;
+      copyPixels(readRegion(tileX,tileY,tile.width,tileHeight),tile,0);
+      return tile;
+    }
+
+    // decode the whole row of tiles once instead of decoding from the top
+    // of the file again for each tile (the budget always holds a row, so
+    // making the row's tiles never drops one of them)
+    BufferedImage image = readRegion(0,tileY,width,tileHeight);
+    int first = index - index % tilesAcross;
+    Tile wanted = null;
+    for (int i = first; i < first + tilesAcross; i++)
+    {
+      if (i == index || (!tiles.containsKey(i) && !spilled.containsKey(i)))
+      {
+        Tile tile = makeTile(i);
+        copyPixels(image,tile,(i - first) * TILE_SIZE);
+        if (i == index)
+          wanted = tile;
+      }
+    }
+    return wanted;
+  }
+
+  /**
+   * Method to make an all black tile and put it in memory, dropping the
+   * least recently used tiles if there isn't room
+   * @param index the tile number
+   * @return the tile
+   * @throws IOException if a dropped tile can't be written
+   */
+  private Tile makeTile(int index) throws IOException
+  {
+    int tileX = index % tilesAcross * TILE_SIZE;
+    int tileY = index / tilesAcross * TILE_SIZE;
+    int tileWidth = Math.min(TILE_SIZE,width - tileX);
+    int tileHeight = Math.min(TILE_SIZE,height - tileY);
+    long bytes = 4L * tileWidth * tileHeight;
+    while (!tiles.isEmpty() && cachedBytes + bytes > budget)
+      dropEldest();
+    Tile tile = new Tile(tileWidth,tileHeight);
+    tiles.put(index,tile);
+    cachedBytes += bytes;
+    return tile;
+  }
+
+  /**
+   * Method to decode a rectangle of the picture's file
+   * @param x the x of the top left corner of the rectangle
+   * @param y the y of the top left corner of the rectangle
+   * @param regionWidth the width of the rectangle
+   * @param regionHeight the height of the rectangle
+   * @return the decoded rectangle
+   * @throws IOException if the file can't be read
+   */
+  private BufferedImage readRegion(int x, int y, int regionWidth,
+                                   int regionHeight) throws IOException
+  {
+    ImageReadParam param = reader.getDefaultReadParam();
+    param.setSourceRegion(new Rectangle(x,y,regionWidth,regionHeight));
+    return reader.read(0,param);
+  }
+
+  /**
+   * Method to copy the pixels of a tile out of a decoded image that
+   * starts at the tile's top
+   * @param image the decoded image
+   * @param tile the tile to fill
+   * @param imageX the x in the image of the tile's left edge
+   */
+  private static void copyPixels(BufferedImage image, Tile tile, int imageX)
+  {
+    image.getRGB(imageX,0,tile.width,tile.pixels.length / tile.width,
+                 tile.pixels,0,tile.width);
+    for (int i = 0; i < tile.pixels.length; i++)
+      tile.pixels[i] &= 0xffffff;
+  }
+
+  /**
+   * Method to drop the least recently used tile from memory, writing it
+   * to the scratch file first if it was changed
+   * @throws IOException if the scratch file can't be written
+   */
+  private void dropEldest() throws IOException
+  {
+    Iterator<Map.Entry<Integer,Tile>> eldest = tiles.entrySet().iterator();
+    Map.Entry<Integer,Tile> entry = eldest.next();
+    Tile tile = entry.getValue();
+    if (tile.dirty)
+      writeScratch(entry.getKey(),tile);
+    eldest.remove();
+    cachedBytes -= 4L * tile.pixels.length;
+    if (entry.getKey() == lastIndex)
+    {
+      lastIndex = -1;
+      lastTile = null;
+    }
+  }
+
+  /**
+   * Method to write a changed tile to the scratch file.  Each tile gets
+   * its own place in the file the first time it is written.
+   * @param index the tile number
+   * @param tile the tile
+   * @throws IOException if the scratch file can't be written
+   */
+  private void writeScratch(int index, Tile tile) throws IOException
+  {
+    if (scratch == null)
+    {
+      scratchFile = File.createTempFile("tiles",".scratch");
+      scratchFile.deleteOnExit();
+      scratch = FileChannel.open(scratchFile.toPath(),StandardOpenOption.READ,
+                                 StandardOpenOption.WRITE);
+      scratchBuffer = ByteBuffer.allocateDirect(TILE_BYTES);
+    }
+    Long offset = spilled.get(index);
+    if (offset == null)
+    {
+      offset = (long) spilled.size() * TILE_BYTES;
+      spilled.put(index,offset);
+    }
+    scratchBuffer.clear();
+    scratchBuffer.asIntBuffer().put(tile.pixels);
+    scratchBuffer.limit(tile.pixels.length * 4);
+    long position = offset;
+    while (scratchBuffer.hasRemaining())
+      position += scratch.write(scratchBuffer,position);
+  }
+
+  /**
+   * Method to read a tile back from the scratch file
+   * @param tile the tile to fill
+   * @param offset where the tile is in the scratch file
+   * @throws IOException if the scratch file can't be read
+   */
+  private void readScratch(Tile tile, long offset) throws IOException
+  {
+    scratchBuffer.clear();
+    scratchBuffer.limit(tile.pixels.length * 4);
+    long position = offset;
+    while (scratchBuffer.hasRemaining())
+    {
+      int count = scratch.read(scratchBuffer,position);
+      if (count < 0)
+        throw new IOException("The scratch file is too short");
+      position += count;
+    }
+    scratchBuffer.flip();
+    scratchBuffer.asIntBuffer().get(tile.pixels);
+  }
+
+}
@@ -0,0 +1,143 @@
+/**
+ * Class for sharpening by unsharp masking: a blurred copy of the picture
+ * is subtracted from it to find the detail, and the detail is added back
+ * in, made stronger.  Local contrast is the same idea with a much bigger
+ * blur, done on the brightness only so colors don't shift.
+ *
+ * The blurred copy is kept in an array from the ScratchPool instead of
+ * in a new Picture, and the blur (see BoxFilter) also takes its arrays
+ * from the pool, so sharpening picture after picture of the same size 
+ * doesn't keep creating new arrays.  After the blur it is one more pass
+ * over the pixels, in parallel bands of rows when the picture is in 
+ * parallel mode.
+ */
+public class UnsharpMask
+{
+
+  /** the number of fraction bits in the fixed-point amount */
+  private static final int AMOUNT_BITS = 8;
+
+  ///////////////////////// public methods //////////////////////////////
+
+  /**
+   * Method to sharpen a picture.  A color of a pixel only changes if it
+   * is more than the threshold away from the blurred color, so smooth 
+   * areas (and their noise) are left alone.
+   * @param picture the picture to change
+   * @param radius the sigma of the blur in pixels (how wide the edges
+   * that get sharpened are)
+   * @param amount how much of the detail to add back (1.0 doubles it)
+   * @param threshold the smallest difference that is sharpened (0 to 255)
+   */
+  public static void unsharpMask(SimplePicture picture, double radius,
+                                 double amount, int threshold)
+  {
+    int width = picture.getWidth();
+    int size = width * picture.getHeight();
+    if (size == 0 || radius <= 0 || amount == 0)
+      return;
+    int scaled = (int) Math.round(amount * (1 << AMOUNT_BITS));
+    int[] blurred = ScratchPool.acquire(size);
+    try
+    {
+      BoxFilter.gaussianBlur(picture,radius,blurred);
+      int[] raster = picture.getRasterData();
+      picture.forEachRowBand((startRow, endRow) ->
+        {
+          for (int i = startRow * width; i < endRow * width; i++)
+          {
+            int rgb = raster[i];
+            int blur = blurred[i];
+            int red = sharpen((rgb >> 16) & 0xff,(blur >> 16) & 0xff,
+                              scaled,threshold);
+            int green = sharpen((rgb >> 8) & 0xff,(blur >> 8) & 0xff,
+                                scaled,threshold);
+            int blue = sharpen(rgb & 0xff,blur & 0xff,scaled,threshold);
+            raster[i] = (red << 16) | (green << 8) | blue;
+          }
+        });
+    }
+    finally
+    {
+      ScratchPool.release(blurred);
+    }
+  }
+
+  /**
+   * Method to increase the contrast between areas and their 
+   * surroundings.  The difference between each pixel's brightness and 
+   * the brightness of the blurred picture is made stronger, and the same
+   * change is made to each color of the pixel.
+   * @param picture the picture to change
+   * @param radius the sigma of the blur in pixels (usually large, like
+   * 20 to 50)
+   * @param amount how much to strengthen the difference (0.5 makes it
+   * half again as strong)
+   */
+  public static void localContrast(SimplePicture picture, double radius,
+                                   double amount)
+  {
+    int width = picture.getWidth();
+    int size = width * picture.getHeight();
+    if (size == 0 || radius <= 0 || amount == 0)
+      return;
+    int scaled = (int) Math.round(amount * (1 << AMOUNT_BITS));
+    int[] blurred = ScratchPool.acquire(size);
+    try
+    {
+      BoxFilter.gaussianBlur(picture,radius,blurred);
+      int[] raster = picture.getRasterData();
+      picture.forEachRowBand((startRow, endRow) ->
+        {
+          for (int i = startRow * width; i < endRow * width; i++)
+          {
+            int rgb = raster[i];
+            int difference = luminance(rgb) - luminance(blurred[i]);
+            int change = (difference * scaled + (1 << (AMOUNT_BITS - 1))) >> 
+              AMOUNT_BITS;
+            int red = Convolution.clamp(((rgb >> 16) & 0xff) + change);
+            int green = Convolution.clamp(((rgb >> 8) & 0xff) + change);
+            int blue = Convolution.clamp((rgb & 0xff) + change);
+            raster[i] = (red << 16) | (green << 8) | blue;
+          }
+        });
+    }
+    finally
+    {
+      ScratchPool.release(blurred);
+    }
+  }
+
+  ///////////////////////// helper methods //////////////////////////////
+
+  /**
+   * Method to sharpen one color value
+   * @param value the original value
+   * @param blur the blurred value
+   * @param scaled the amount in fixed point
+   * @param threshold the smallest difference that is sharpened
+   * @return the sharpened value from 0 to 255
+   */
+  private static int sharpen(int value, int blur, int scaled, int threshold)
+  {
+    int difference = value - blur;
+    if (Math.abs(difference) <= threshold)
+      return value;
+    int change = (difference * scaled + (1 << (AMOUNT_BITS - 1))) >> 
+      AMOUNT_BITS;
+    return Convolution.clamp(value + change);
+  }
+
+  /**
+   * Method to get the brightness of a pixel value
+   * (0.299 red + 0.587 green + 0.114 blue) in fixed point
+   * @param rgb the pixel value
+   * @return the brightness from 0 to 255
+   */
+  private static int luminance(int rgb)
+  {
+    return (((rgb >> 16) & 0xff) * 77 + ((rgb >> 8) & 0xff) * 150 + 
+            (rgb & 0xff) * 29 + 128) >> 8;
+  }
+
+}